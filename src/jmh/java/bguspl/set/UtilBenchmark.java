@@ -0,0 +1,156 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Microbenchmarks for the set engine (UtilImpl).
+ * The card configuration is given as FeatureCount x FeatureSize (e.g. 4x3 is the standard 81-card deck).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+    /**
+     * The number of prepared card arrays (cycled through by the per-call benchmarks).
+     */
+    private static final int SAMPLES = 1024;
+
+    @State(Scope.Thread)
+    public abstract static class Engine {
+
+        @Param({"4x3", "6x3", "4x4"})
+        public String features;
+
+        Config config;
+        Util util;
+        Random random;
+
+        void setUpEngine() {
+            String[] sizes = features.split("x");
+            Properties properties = new Properties();
+            properties.setProperty("FeatureCount", sizes[0]);
+            properties.setProperty("FeatureSize", sizes[1]);
+            config = new Config(Logger.getAnonymousLogger(), properties);
+            util = new UtilImpl(config);
+            random = new Random(42);
+        }
+    }
+
+    /**
+     * Arrays of featureSize cards, a given fraction of them legal sets.
+     */
+    public static class Cards extends Engine {
+
+        @Param({"0.0", "0.5", "1.0"})
+        public double hitRatio;
+
+        int[][] samples;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUpCards() {
+            setUpEngine();
+            samples = new int[SAMPLES][];
+            for (int i = 0; i < SAMPLES; ++i)
+                samples[i] = random.nextDouble() < hitRatio ? randomSet() : randomMiss();
+        }
+
+        /**
+         * Draws a legal set: each feature is either the same value on all cards or a permutation of all the values.
+         */
+        private int[] randomSet() {
+            int[] set = new int[config.featureSize];
+            for (int i = 0; i < config.featureCount; ++i) {
+                List<Integer> values = IntStream.range(0, config.featureSize).boxed().collect(Collectors.toList());
+                boolean sameSame = random.nextBoolean();
+                if (!sameSame) Collections.shuffle(values, random);
+                int same = random.nextInt(config.featureSize);
+                for (int j = 0; j < set.length; ++j)
+                    set[j] = set[j] * config.featureSize + (sameSame ? same : values.get(j));
+            }
+            return set;
+        }
+
+        private int[] randomMiss() {
+            int[] cards;
+            do {
+                cards = random.ints(0, config.deckSize).distinct().limit(config.featureSize).toArray();
+            } while (util.testSet(cards));
+            return cards;
+        }
+
+        int[] next() {
+            return samples[next++ & (SAMPLES - 1)];
+        }
+    }
+
+    /**
+     * A random collection of cards to search for sets in (capped by the deck size).
+     */
+    public static class Deck extends Engine {
+
+        @Param({"12", "81", "729"})
+        public int cards;
+
+        List<Integer> deck;
+
+        @Setup(Level.Trial)
+        public void setUpDeck() {
+            setUpEngine();
+            deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(deck, random);
+            deck = deck.subList(0, Math.min(cards, config.deckSize));
+        }
+    }
+
+    @Benchmark
+    public boolean testSet(Cards cards) {
+        return cards.util.testSet(cards.next());
+    }
+
+    @Benchmark
+    public int[][] cardsToFeatures(Cards cards) {
+        return cards.util.cardsToFeatures(cards.next());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<int[]> findAllSets(Deck deck) {
+        return deck.util.findSets(deck.deck, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<int[]> findOneSet(Deck deck) {
+        return deck.util.findSets(deck.deck, 1);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int countSets(Deck deck) {
+        return deck.util.countSets(deck.deck, Integer.MAX_VALUE);
+    }
+}
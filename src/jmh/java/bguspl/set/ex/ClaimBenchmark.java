@@ -0,0 +1,243 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.SetIndex;
+import bguspl.set.UserInterface;
+import bguspl.set.UserInterfaceDecorator;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Benchmarks the claim path: from a player placing its third token (Player.keyPressed) to the dealer's verdict.
+ * Every benchmark thread plays one (human, i.e. keyboard driven) player against a shared table and dealer, without
+ * Swing. Each operation claims a set that is on the table and waits for the verdict, so SampleTime reports the
+ * claim-to-verdict latency percentiles and Throughput the verdicts per time unit.
+ * Run with as many threads (-t) as players (-p players), e.g.
+ * mvn -Pjmh compile exec:exec -Djmh.args="ClaimBenchmark -t 8 -p players=8 -p tableDelaySeconds=0.1"
+ * A new game is started whenever the current one ends.
+ */
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ClaimBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Game {
+
+        @Param("4")
+        public int players;
+
+        @Param("0")
+        public String tableDelaySeconds;
+
+        @Param("0")
+        public String pointFreezeSeconds;
+
+        @Param("0")
+        public String penaltyFreezeSeconds;
+
+        /**
+         * The table grid, Rows x Columns (a larger table rarely runs out of sets before the turn times out).
+         */
+        @Param("4x5")
+        public String grid;
+
+        @Param("OFF")
+        public String logLevel;
+
+        private Logger logger;
+        private Config config;
+        private Util util;
+        private SetIndex setIndex;
+        private final AtomicInteger nextPlayer = new AtomicInteger();
+        private volatile Round round;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            logger = Logger.getAnonymousLogger();
+            logger.setUseParentHandlers(false);
+
+            String[] dimensions = grid.split("x");
+            Properties properties = new Properties();
+            properties.setProperty("LogLevel", logLevel);
+            properties.setProperty("HumanPlayers", Integer.toString(players));
+            properties.setProperty("ComputerPlayers", "0");
+            properties.setProperty("Rows", dimensions[0]);
+            properties.setProperty("Columns", dimensions[1]);
+            properties.setProperty("TableDelaySeconds", tableDelaySeconds);
+            properties.setProperty("PointFreezeSeconds", pointFreezeSeconds);
+            properties.setProperty("PenaltyFreezeSeconds", penaltyFreezeSeconds);
+            properties.setProperty("EndGamePauseSeconds", "0");
+            config = new Config(logger, properties);
+            util = new UtilImpl(config);
+            setIndex = new SetIndex(config, util);
+            round = new Round();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            round.terminate();
+        }
+
+        /**
+         * Starts a new game, unless another thread already did.
+         *
+         * @param ended - the game that ended.
+         * @return - the current game.
+         */
+        synchronized Round restart(Round ended) {
+            if (round == ended) {
+                ended.terminate();
+                round = new Round();
+            }
+            return round;
+        }
+
+        /**
+         * A single game: its table, dealer and players.
+         */
+        class Round {
+
+            final Table table;
+            final Dealer dealer;
+            final Player[] players;
+            final Thread thread;
+
+            Round() {
+                Env env = new Env(logger, config, new UserInterfaceDecorator(logger, util, new NoUserInterface()), util, setIndex);
+                players = new Player[config.players];
+                table = new Table(env);
+                dealer = new Dealer(env, table, players);
+                for (int i = 0; i < players.length; i++)
+                    players[i] = new Player(env, dealer, table, i, true);
+
+                // the (human) players have no threads, so the dealer thread is the only one to stop
+                thread = new Thread(dealer, "dealer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            boolean isRunning() {
+                return thread.isAlive();
+            }
+
+            /**
+             * Places the player's tokens on a set that is on the table.
+             *
+             * @return - true iff the player placed its third token (i.e. the claim was made).
+             */
+            boolean claim(Player player) {
+                // take back the tokens left over from a failed or penalized claim
+                for (int slot : Table.slots(table.tokens(player.id)))
+                    player.keyPressed(slot);
+
+                int[] set = table.findSet();
+                if (set == null) return false;
+                for (int card : set) {
+                    int slot = table.cardToSlot[card];
+                    if (slot == Table.EMPTY) return false;
+                    player.keyPressed(slot);
+                }
+                return table.countTokens(player.id) == set.length;
+            }
+
+            void terminate() {
+                dealer.terminate();
+                thread.interrupt();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Claimant {
+
+        int player;
+
+        @Setup(Level.Trial)
+        public void setUp(Game game) {
+            player = game.nextPlayer.getAndIncrement() % game.players;
+        }
+    }
+
+    @Benchmark
+    public int claim(Game game, Claimant claimant) {
+        Game.Round round = game.round;
+        while (true) {
+            Player player = round.players[claimant.player];
+            int verdicts = player.verdicts();
+            if (round.claim(player)) {
+                while (player.verdicts() == verdicts && round.isRunning())
+                    Thread.yield();
+                if (player.verdicts() != verdicts) return player.verdicts();
+            } else {
+                Thread.yield();
+            }
+            if (!round.isRunning()) round = game.restart(round);
+        }
+    }
+
+    /**
+     * A user interface that draws nothing (the decorator still logs every call).
+     */
+    private static class NoUserInterface implements UserInterface {
+
+        @Override
+        public void placeCard(int card, int slot) {}
+
+        @Override
+        public void removeCard(int slot) {}
+
+        @Override
+        public void placeToken(int player, int slot) {}
+
+        @Override
+        public void removeTokens() {}
+
+        @Override
+        public void removeTokens(int slot) {}
+
+        @Override
+        public void removeToken(int player, int slot) {}
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {}
+
+        @Override
+        public void setElapsed(long millies) {}
+
+        @Override
+        public void setFreeze(int player, long millies) {}
+
+        @Override
+        public void setScore(int player, int score) {}
+
+        @Override
+        public void announceWinner(int[] players) {}
+
+        @Override
+        public void dispose() {}
+    }
+}
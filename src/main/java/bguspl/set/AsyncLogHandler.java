@@ -0,0 +1,203 @@
+package bguspl.set;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A log handler that does no formatting or I/O on the logging thread: publish only copies the record's fields (level,
+ * message pattern, parameters, time) into a preallocated slot of a ring buffer, and a single background writer thread
+ * formats the events in batches and writes every batch to the output with one flush. The writer sleeps while the ring
+ * is empty and is woken up by the next publish. If the writer falls behind and the buffer fills up, records are
+ * dropped (and their number is logged) rather than blocking the game.
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * How long flush waits between checks of the writer's progress.
+     */
+    private static final long FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A log event: the fields of a record that the formatting needs (the slots are reused, the records are not kept).
+     */
+    private static final class Event {
+        private Level level;
+        private String message;
+        private Object[] parameters;
+        private long millis;
+        private String loggerName;
+        private Throwable thrown;
+    }
+
+    /**
+     * The events, by sequence number modulo the capacity.
+     */
+    private final Event[] ring;
+
+    /**
+     * The sequence number (plus one) of the record last published in each slot of the ring.
+     */
+    private final AtomicLongArray published;
+
+    private final int mask;
+
+    /**
+     * The sequence number of the next record to publish.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number of the next record to write (written only by the writer thread).
+     */
+    private volatile long tail;
+
+    /**
+     * The sequence number of the next record to write out, i.e. all the records before it are in the output.
+     */
+    private volatile long written;
+
+    /**
+     * The number of records dropped since the writer last reported.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param out      - the stream to write the log to (closed by close).
+     * @param capacity - the number of records the buffer holds (rounded up to a power of 2).
+     */
+    public AsyncLogHandler(OutputStream out, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        ring = new Event[size];
+        for (int slot = 0; slot < size; ++slot)
+            ring[slot] = new Event();
+        published = new AtomicLongArray(size);
+        mask = size - 1;
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer = new Thread(this::write, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) return;
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= ring.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        Event event = ring[slot];
+        event.level = record.getLevel();
+        event.message = record.getMessage();
+        event.parameters = record.getParameters();
+        event.millis = record.getMillis();
+        event.loggerName = record.getLoggerName();
+        event.thrown = record.getThrown();
+        published.set(slot, sequence + 1);
+        // the ring was empty, the writer may be asleep (the volatile write above and the read of tail pair with the
+        // writer's write of tail and read of published, so at least one of the two sees the other)
+        if (sequence == tail) LockSupport.unpark(writer);
+    }
+
+    /**
+     * Waits until the writer wrote everything published so far.
+     */
+    @Override
+    public void flush() {
+        long until = head.get();
+        while (written < until && writer.isAlive())
+            LockSupport.parkNanos(FLUSH_NANOS);
+    }
+
+    /**
+     * Stops taking records, lets the writer write everything published, then stops it and closes the output.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The writer thread: formats and writes the published events, a batch at a time, until the handler is closed and
+     * everything published before is written.
+     */
+    private void write() {
+        StringBuilder batch = new StringBuilder();
+        LogRecord record = new LogRecord(Level.OFF, null); // reused for every event, only the writer formats
+        while (true) {
+            boolean closing = closed;
+            long next = tail;
+            long end = next + ring.length;
+            while (next < end && published.get((int) next & mask) == next + 1) {
+                Event event = ring[(int) next & mask];
+                record.setLevel(event.level);
+                record.setMessage(event.message);
+                record.setParameters(event.parameters);
+                record.setMillis(event.millis);
+                record.setLoggerName(event.loggerName);
+                record.setThrown(event.thrown);
+                event.parameters = null;
+                event.thrown = null;
+                tail = ++next; // the slot may be reused from here on
+                format(batch, record);
+            }
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) batch.append("[log] ").append(lost).append(" records dropped").append(System.lineSeparator());
+
+            if (batch.length() > 0) {
+                try {
+                    out.append(batch);
+                    out.flush();
+                } catch (IOException e) {
+                    reportError(null, e, ErrorManager.WRITE_FAILURE);
+                }
+                batch.setLength(0);
+                written = next;
+            } else {
+                written = next;
+                if (closing && next == head.get()) break;
+                if (closing) Thread.yield(); // a record being published while closing
+                else if (published.get((int) next & mask) != next + 1) LockSupport.park(this);
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+    private void format(StringBuilder batch, LogRecord record) {
+        try {
+            batch.append(getFormatter() == null ? record.getMessage() + System.lineSeparator() : getFormatter().format(record));
+        } catch (RuntimeException e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * All the card images (and the empty card) packed into a single image, drawn from with one drawImage call per cell.
+ * The atlas is built from the card resources on the first run and saved to the cache directory, so later runs read a
+ * single file (delete the file to rebuild it after the card images change). The index is the layout itself: the
+ * cards are cells of a grid, card id x in cell x and the empty card in the cell after the last card.
+ */
+public class CardAtlas {
+
+    /**
+     * The directory the atlases are saved in.
+     */
+    static final String CACHE_DIRECTORY = "./cache/";
+
+    /**
+     * The shared atlases, by card configuration (FeatureCount x FeatureSize).
+     */
+    private static final Map<String, CardAtlas> shared = new ConcurrentHashMap<>();
+
+    /**
+     * The atlas (a compatible image, if there is a screen).
+     */
+    private final BufferedImage image;
+
+    /**
+     * The number of cells (the cards and the empty card), the number of grid columns and the cell size.
+     */
+    private final int cells;
+    private final int columns;
+    private final int cellWidth;
+    private final int cellHeight;
+
+    private CardAtlas(BufferedImage image, int cells) {
+        this.image = compatible(image);
+        this.cells = cells;
+        columns = columns(cells);
+        cellWidth = image.getWidth() / columns;
+        cellHeight = image.getHeight() / rows(cells);
+    }
+
+    /**
+     * @param config - the game configuration.
+     * @param logger - the game logger.
+     * @return - the atlas of the configuration's cards, shared by all the games (loaded or built on first use).
+     */
+    public static CardAtlas shared(Config config, Logger logger) {
+        return shared.computeIfAbsent(config.featureCount + "x" + config.featureSize,
+                key -> load(config, new File(CACHE_DIRECTORY + "cards_" + key + ".png"), logger));
+    }
+
+    /**
+     * Reads the atlas from its file, or builds it from the card resources and saves it there (if it can).
+     *
+     * @param config - the game configuration.
+     * @param file   - the atlas file.
+     * @param logger - the game logger.
+     * @return - the atlas.
+     */
+    static CardAtlas load(Config config, File file, Logger logger) {
+        int cells = config.deckSize + 1;
+        try {
+            if (file.isFile()) {
+                BufferedImage image = ImageIO.read(file);
+                if (image != null && image.getWidth() % columns(cells) == 0 && image.getHeight() % rows(cells) == 0)
+                    return new CardAtlas(image, cells);
+                logger.severe("warning: the card atlas " + file + " does not fit the cards, rebuilding it");
+            }
+        } catch (IOException e) {
+            logger.severe("warning: cannot read the card atlas " + file + ": " + e.getMessage());
+        }
+
+        BufferedImage image = build(config);
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            file.getAbsoluteFile().getParentFile().mkdirs();
+            ImageIO.write(image, "png", file);
+            logger.log(Level.INFO, "saved the card atlas to {0}", file);
+        } catch (IOException e) {
+            logger.severe("warning: cannot save the card atlas " + file + ": " + e.getMessage());
+        }
+        return new CardAtlas(image, cells);
+    }
+
+    /**
+     * @return - the card resources (and the empty card) packed into a grid.
+     */
+    private static BufferedImage build(Config config) {
+        int cells = config.deckSize + 1;
+        BufferedImage empty = read("cards/empty_card.png");
+        int width = empty.getWidth();
+        int height = empty.getHeight();
+        int columns = columns(cells);
+
+        BufferedImage atlas = new BufferedImage(columns * width, rows(cells) * height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        try {
+            for (int cell = 0; cell < cells; ++cell) {
+                BufferedImage card = cell < config.deckSize ? read(CardImageCache.resourceName(config, cell)) : empty;
+                g.drawImage(card, cell % columns * width, cell / columns * height, width, height, null);
+            }
+        } finally {
+            g.dispose();
+        }
+        return atlas;
+    }
+
+    private static BufferedImage read(String filename) {
+        try (InputStream in = CardAtlas.class.getClassLoader().getResourceAsStream(filename)) {
+            if (in == null) throw new FileNotFoundException(filename);
+            BufferedImage image = ImageIO.read(in);
+            if (image == null) throw new IOException("unsupported image format: " + filename);
+            return image;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return - a copy of the image in the screen's format (so that drawing it can be accelerated), or the image
+     *           itself if there is no screen.
+     */
+    private static BufferedImage compatible(BufferedImage image) {
+        if (GraphicsEnvironment.isHeadless()) return image;
+        BufferedImage copy = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(image.getWidth(), image.getHeight(), Transparency.TRANSLUCENT);
+        Graphics2D g = copy.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return copy;
+    }
+
+    private static int columns(int cells) {
+        return (int) Math.ceil(Math.sqrt(cells));
+    }
+
+    private static int rows(int cells) {
+        int columns = columns(cells);
+        return (cells + columns - 1) / columns;
+    }
+
+    /**
+     * @param card - the card id (-1 for the empty card).
+     * @return - the card's rectangle in the atlas.
+     */
+    public Rectangle bounds(int card) {
+        int cell = card < 0 ? cells - 1 : card;
+        return new Rectangle(cell % columns * cellWidth, cell / columns * cellHeight, cellWidth, cellHeight);
+    }
+
+    /**
+     * Draws a card at its size.
+     *
+     * @param g        - the graphics to draw with.
+     * @param card     - the card id (-1 for the empty card).
+     * @param x        - the x coordinate of the card's top left corner.
+     * @param y        - the y coordinate of the card's top left corner.
+     * @param observer - the component drawn on.
+     */
+    public void draw(Graphics g, int card, int x, int y, ImageObserver observer) {
+        int cell = card < 0 ? cells - 1 : card;
+        int sx = cell % columns * cellWidth;
+        int sy = cell / columns * cellHeight;
+        g.drawImage(image, x, y, x + cellWidth, y + cellHeight, sx, sy, sx + cellWidth, sy + cellHeight, observer);
+    }
+}
@@ -0,0 +1,179 @@
+package bguspl.set;
+
+import javax.swing.ImageIcon;
+import java.awt.Image;
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The card images, loaded from the card resources when first needed and kept up to a limit, evicting the least
+ * recently used ones. Images can be prefetched in the background (e.g. the cards about to be dealt), and the games in
+ * one process share a cache per card configuration.
+ */
+public class CardImageCache {
+
+    /**
+     * The shared caches, by card configuration (FeatureCount x FeatureSize).
+     */
+    private static final Map<String, CardImageCache> shared = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the prefetched images in the background.
+     */
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "card-image-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Config config;
+
+    /**
+     * The loaded images by card id, least recently used first (guarded by itself).
+     */
+    private final LinkedHashMap<Integer, Image> images;
+
+    /**
+     * The images being loaded, by card id.
+     */
+    private final Map<Integer, FutureTask<Image>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * @param config   - the game configuration (of the card configuration).
+     * @param capacity - the maximal number of images to keep.
+     */
+    public CardImageCache(Config config, int capacity) {
+        this.config = config;
+        images = new LinkedHashMap<Integer, Image>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Image> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param config - the game configuration.
+     * @return - the cache shared by all the games with the configuration's cards (of the configured size).
+     */
+    public static CardImageCache shared(Config config) {
+        return shared.computeIfAbsent(config.featureCount + "x" + config.featureSize,
+                key -> new CardImageCache(config, config.cardCacheSize));
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the card's image, loaded now if it is not in the cache (or waited for if it is being prefetched).
+     */
+    public Image get(int card) {
+        Image image = cached(card);
+        if (image != null) return image;
+        FutureTask<Image> load = loadTask(card);
+        load.run(); // does nothing if the loader is already running it
+        try {
+            return load.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the card's image if it is in the cache, without waiting for it otherwise: then the image is loaded in
+     * the background, and the callback is run (on the loader thread) once it is in the cache.
+     *
+     * @param card   - the card id.
+     * @param loaded - the callback to run once the image is loaded (if it is not in the cache).
+     * @return - the card's image, or null if it is not in the cache.
+     */
+    public Image get(int card, Runnable loaded) {
+        Image image = cached(card);
+        if (image != null) return image;
+        FutureTask<Image> load = loadTask(card);
+        loader.execute(() -> {
+            load.run();
+            try {
+                load.get();
+            } catch (ExecutionException | InterruptedException e) {
+                return; // the image cannot be loaded, get(card) reports why
+            }
+            loaded.run();
+        });
+        return null;
+    }
+
+    /**
+     * Loads the images of cards in the background, unless they are already in the cache.
+     *
+     * @param cards - the card ids.
+     */
+    public void prefetch(int[] cards) {
+        for (int card : cards)
+            if (card >= 0 && cached(card) == null)
+                loader.execute(loadTask(card));
+    }
+
+    /**
+     * @return - the number of images in the cache.
+     */
+    public int size() {
+        synchronized (images) {
+            return images.size();
+        }
+    }
+
+    private Image cached(int card) {
+        synchronized (images) {
+            return images.get(card);
+        }
+    }
+
+    /**
+     * @return - the task loading the card's image into the cache (a single task per card at a time).
+     */
+    private FutureTask<Image> loadTask(int card) {
+        return loading.computeIfAbsent(card, key -> new FutureTask<>(() -> {
+            try {
+                Image image = load(resourceName(config, card));
+                synchronized (images) {
+                    images.put(card, image);
+                }
+                return image;
+            } finally {
+                loading.remove(card);
+            }
+        }));
+    }
+
+    /**
+     * @param config - the game configuration.
+     * @param card   - the card id.
+     * @return - the card's image resource: its features in base FeatureSize, e.g. cards/0212.png.
+     */
+    static String resourceName(Config config, int card) {
+        char[] name = new char[config.featureCount];
+        for (int i = name.length - 1; i >= 0; --i, card /= config.featureSize)
+            name[i] = Character.forDigit(card % config.featureSize, config.featureSize);
+        return "cards/" + new String(name) + ".png";
+    }
+
+    /**
+     * @param filename - the image resource.
+     * @return - the image (fully loaded).
+     */
+    static Image load(String filename) {
+        URL imageResource = CardImageCache.class.getClassLoader().getResource(filename);
+        if (imageResource == null)
+            throw new RuntimeException(new FileNotFoundException(filename));
+        return new ImageIcon(imageResource).getImage();
+    }
+}
@@ -36,6 +36,11 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * Whether to search for sets in parallel, on the common fork/join pool (useful for large decks only)
+     */
+    public final boolean parallelFindSets;
+
     /**
      * The number of human players in the game.
      */
@@ -51,6 +56,17 @@ public class Config {
      */
     public final int players;
 
+    /**
+     * How the players are run: Threads (a thread per computer player), Pool (a shared thread pool) or Virtual (a
+     * virtual thread per computer player)
+     */
+    public final String playerRuntime;
+
+    /**
+     * The seed of the dealer's deck shuffles, for repeatable games (0 for a random seed)
+     */
+    public final long deckSeed;
+
     /**
      * Whether to print out hints to the console or not
      */
@@ -86,6 +102,36 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The number of milliseconds between the key presses of a computer player
+     */
+    public final long computerDelayMillis;
+
+    /**
+     * The number of milliseconds a computer player takes to react to a set on the table (before its first key press)
+     */
+    public final long computerReactionMillis;
+
+    /**
+     * The probability of a computer player going for cards that are not a set it found (0 for no mistakes)
+     */
+    public final double computerErrorRate;
+
+    /**
+     * The number of games to simulate without a user interface (0 to play a single game with one)
+     */
+    public final int simulationGames;
+
+    /**
+     * The factor the delays (table delay, freezes and computer players' delay and reaction) are scaled by in simulation
+     */
+    public final double simulationTimeScale;
+
+    /**
+     * The number of games to simulate at the same time, each on a table of its own
+     */
+    public final int simulationTables;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -103,7 +149,13 @@ public class Config {
     public final int columns;
 
     /**
-     * The total number of cells in the table grid
+     * The maximal number of cells in the table grid: the slots are kept in 64-bit masks (the free slots, the players'
+     * tokens and the slots to redraw).
+     */
+    public static final int MAX_TABLE_SIZE = Long.SIZE;
+
+    /**
+     * The total number of cells in the table grid (at most MAX_TABLE_SIZE)
      */
     public final int tableSize;
 
@@ -132,6 +184,16 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * The number of card images to keep in memory (at least the table size; the least recently used are evicted)
+     */
+    public final int cardCacheSize;
+
+    /**
+     * True iff the cards are drawn from a single atlas image (built on the first run), instead of an image per card
+     */
+    public final boolean cardAtlas;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -155,7 +217,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -197,12 +259,15 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        parallelFindSets = Boolean.parseBoolean(properties.getProperty("ParallelFindSets", "False"));
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        playerRuntime = properties.getProperty("PlayerRuntime", "Threads").trim();
 
+        deckSeed = Long.parseLong(properties.getProperty("DeckSeed", "0"));
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
@@ -210,6 +275,12 @@ public class Config {
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        computerDelayMillis = (long) (Double.parseDouble(properties.getProperty("ComputerDelaySeconds", "1")) * 1000.0);
+        computerReactionMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionSeconds", "1")) * 1000.0);
+        computerErrorRate = Double.parseDouble(properties.getProperty("ComputerErrorRate", "0"));
+        simulationGames = Integer.parseInt(properties.getProperty("SimulationGames", "0"));
+        simulationTimeScale = Double.parseDouble(properties.getProperty("SimulationTimeScale", "0"));
+        simulationTables = Math.max(1, Integer.parseInt(properties.getProperty("SimulationTables", "1")));
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -219,11 +290,16 @@ public class Config {
         rows = Integer.parseInt(properties.getProperty("Rows", "3"));
         columns = Integer.parseInt(properties.getProperty("Columns", "4"));
         tableSize = rows * columns;
+        if (tableSize > MAX_TABLE_SIZE)
+            throw new IllegalArgumentException("the table has " + tableSize + " cells (Rows x Columns), at most "
+                    + MAX_TABLE_SIZE + " are supported");
         cellWidth = Integer.parseInt(properties.getProperty("CellWidth", "258"));
         cellHeight = Integer.parseInt(properties.getProperty("CellHeight", "167"));
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        cardCacheSize = Math.max(tableSize, Integer.parseInt(properties.getProperty("CardCacheSize", "64")));
+        cardAtlas = Boolean.parseBoolean(properties.getProperty("CardAtlas", "True"));
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
@@ -8,11 +8,17 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final SetIndex setIndex;
 
-    public Env(Logger logger, Config config, UserInterface ui, Util util) {
+    public Env(Logger logger, Config config, UserInterface ui, Util util, SetIndex setIndex) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.setIndex = setIndex;
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new SetIndex(config, util));
     }
 }
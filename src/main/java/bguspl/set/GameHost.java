@@ -0,0 +1,108 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.PlayerRuntime;
+import bguspl.set.ex.Table;
+
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent games of computer players in one process, each with its own environment, table and dealer.
+ * The games share what is expensive to create: the set engine (Util), the set index and the player runtime (use
+ * PlayerRuntime=Pool for many tables). The games have no user interface.
+ */
+public class GameHost {
+
+    private final Logger logger;
+    private final Config config;
+    private final Util util;
+    private final SetIndex setIndex;
+    private final UserInterface ui;
+    private final PlayerRuntime runtime;
+
+    /**
+     * @param logger - the logger of all the games.
+     * @param config - the configuration of all the games (its human players are played by the computer).
+     */
+    public GameHost(Logger logger, Config config) {
+        this.logger = logger;
+        this.config = config;
+        util = new UtilImpl(config);
+        setIndex = new SetIndex(config, util);
+        ui = new UserInterfaceDecorator(logger, util, null);
+        runtime = PlayerRuntime.create(config, logger);
+    }
+
+    /**
+     * A game on a table of its own.
+     */
+    public class Game {
+
+        public final Env env;
+        public final Table table;
+        public final Dealer dealer;
+        public final Player[] players;
+
+        /**
+         * The dealer thread, if the game was started on one.
+         */
+        private ThreadLogger dealerThread;
+
+        private Game() {
+            env = new Env(logger, config, ui, util, setIndex);
+            players = new Player[config.players];
+            table = new Table(env);
+            dealer = new Dealer(env, table, players, runtime);
+            for (int i = 0; i < players.length; i++)
+                players[i] = new Player(env, dealer, table, i, false);
+        }
+
+        /**
+         * Waits for the game to end.
+         *
+         * @throws InterruptedException - if interrupted while waiting.
+         */
+        public void join() throws InterruptedException {
+            dealerThread.joinWithLog();
+        }
+
+        /**
+         * Ends the game.
+         */
+        public void terminate() {
+            dealer.terminate();
+        }
+    }
+
+    /**
+     * Plays a game on the calling thread (as its dealer thread).
+     *
+     * @return - the game, after it ended.
+     */
+    public Game play() {
+        Game game = new Game();
+        game.dealer.run();
+        return game;
+    }
+
+    /**
+     * Starts a game on a new dealer thread.
+     *
+     * @param name - the name of the dealer thread.
+     * @return - the running game.
+     */
+    public Game start(String name) {
+        Game game = new Game();
+        game.dealerThread = new ThreadLogger(game.dealer, name, logger);
+        game.dealerThread.startWithLog();
+        return game;
+    }
+
+    /**
+     * Stops the shared player runtime (once all the games ended).
+     */
+    public void shutdown() {
+        runtime.shutdown();
+    }
+}
@@ -5,11 +5,14 @@ import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Properties;
 import java.util.logging.*;
 
 /**
@@ -17,6 +20,11 @@ import java.util.logging.*;
  */
 public class Main {
 
+    /**
+     * The number of log records the logger buffers for its writer thread.
+     */
+    private static final int LOG_BUFFER_SIZE = 1 << 16;
+
     private static Dealer dealer;
     private static Thread mainThread;
 
@@ -42,7 +50,12 @@ public class Main {
         // create the game environment objects
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
-        Config config = new Config(logger, "config.properties");
+        Properties properties = Config.loadProperties("config.properties", logger);
+        Config config = new Config(logger, properties);
+        if (config.simulationGames > 0) {
+            simulate(properties, config.simulationGames);
+            return;
+        }
         Util util = new UtilImpl(config);
 
         Player[] players = new Player[config.players];
@@ -83,15 +96,32 @@ public class Main {
         }
     }
 
+    /**
+     * Plays games without a user interface (see Simulation), instead of a single game.
+     *
+     * @param properties - the game configuration.
+     * @param games      - the number of games to play.
+     */
+    private static void simulate(Properties properties, int games) {
+        try {
+            new Simulation(logger, properties).run(games);
+        } catch (InterruptedException ignored) {
+        } finally {
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
         SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
-        FileHandler handler;
+        Handler handler;
         try {
             //noinspection ResultOfMethodCallIgnored
             new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            // the game threads only enqueue their records, a background thread formats and writes them
+            handler = new AsyncLogHandler(new FileOutputStream("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log"), LOG_BUFFER_SIZE);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -106,13 +136,15 @@ public class Main {
 
     public static void setLoggerLevelAndFormat(Logger logger, Level level, String format) {
         Handler[] handlers = logger.getHandlers();
-        if (handlers != null) Arrays.stream(handlers).forEach(h -> h.setFormatter(new SimpleFormatter() {
+        if (handlers != null) Arrays.stream(handlers).forEach(h -> h.setFormatter(new Formatter() {
             // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
+            // not synchronized: the log writer thread is the only one formatting (parameters are formatted here too)
             @Override
-            public synchronized String format(LogRecord lr) {
-                return String.format(format, new Date(lr.getMillis()),
-                        lr.getLevel().getLocalizedName(), lr.getMessage()
-                );
+            public String format(LogRecord lr) {
+                Object[] parameters = lr.getParameters();
+                String message = parameters == null || parameters.length == 0
+                        ? lr.getMessage() : MessageFormat.format(lr.getMessage(), parameters);
+                return String.format(format, new Date(lr.getMillis()), lr.getLevel().getLocalizedName(), message);
             }
         }));
         logger.setLevel(level);
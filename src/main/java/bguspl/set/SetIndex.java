@@ -0,0 +1,103 @@
+package bguspl.set;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A precomputed index of all the legal sets in the deck, and of the sets each card belongs to.
+ * The index is immutable, so it can be shared by all the tables that use the same card configuration.
+ */
+public class SetIndex {
+
+    /**
+     * The maximum number of sets to index (larger decks are not indexed at all).
+     */
+    public static final int MAX_INDEXED_SETS = 1 << 20;
+
+    /**
+     * The number of cards in each set (i.e. config.featureSize).
+     */
+    public final int setSize;
+
+    /**
+     * The card ids of every legal set in the deck (sorted), by set id.
+     */
+    private final int[][] sets;
+
+    /**
+     * The ids of the sets every card belongs to, by card id.
+     */
+    private final int[][] cardToSets;
+
+    /**
+     * True iff the deck was small enough to be indexed.
+     */
+    private final boolean available;
+
+    public SetIndex(Config config, Util util) {
+        setSize = config.featureSize;
+        available = estimateSets(config) <= MAX_INDEXED_SETS;
+
+        List<int[]> found = Collections.emptyList();
+        if (available) {
+            List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            found = util.findSets(deck, Integer.MAX_VALUE);
+        }
+        sets = found.toArray(new int[0][]);
+
+        int[] memberships = new int[config.deckSize];
+        for (int[] set : sets)
+            for (int card : set)
+                memberships[card]++;
+        cardToSets = new int[config.deckSize][];
+        for (int card = 0; card < config.deckSize; ++card)
+            cardToSets[card] = new int[memberships[card]];
+        for (int set = 0; set < sets.length; ++set)
+            for (int card : sets[set])
+                cardToSets[card][--memberships[card]] = set;
+    }
+
+    /**
+     * An upper bound on the number of sets in the deck: every combination of setSize - 1 cards is completed by at
+     * most one card, and every set is counted once per card in it.
+     */
+    private static double estimateSets(Config config) {
+        int r = config.featureSize - 1;
+        double combinations = 1;
+        for (int i = 0; i < r; ++i)
+            combinations = combinations * (config.deckSize - i) / (i + 1);
+        return combinations / config.featureSize;
+    }
+
+    /**
+     * @return - true iff the deck was indexed (otherwise the index is empty and sets should be searched for).
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * @return - the number of legal sets in the deck.
+     */
+    public int size() {
+        return sets.length;
+    }
+
+    /**
+     * @param set - the set id.
+     * @return - the (sorted) card ids of the set. The returned array must not be modified.
+     */
+    public int[] set(int set) {
+        return sets[set];
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the ids of all the sets the card belongs to. The returned array must not be modified.
+     */
+    public int[] setsOf(int card) {
+        return cardToSets[card];
+    }
+}
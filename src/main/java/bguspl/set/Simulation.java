@@ -0,0 +1,145 @@
+package bguspl.set;
+
+import java.util.LongSummaryStatistics;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Plays games back-to-back without a user interface, with computer players only, and reports how fast they went.
+ * The games run the real dealer, player and table logic, with the delays scaled by SimulationTimeScale. A scale of 0
+ * also turns the turn timer off, so the dealer reshuffles as soon as there is no set on the table.
+ * SimulationTables games are played at the same time, on a single game host.
+ */
+public class Simulation {
+
+    private final Logger logger;
+    private final Config config;
+
+    /**
+     * The games started, and the games finished, the sets taken and the verdict latencies of all the finished games
+     * (guarded by verdictNanos).
+     */
+    private final AtomicInteger played = new AtomicInteger();
+    private int finished;
+    private long sets;
+    private final LongSummaryStatistics verdictNanos = new LongSummaryStatistics();
+
+    /**
+     * @param logger     - the game logger (it is turned off for the simulation, every ui call is logged).
+     * @param properties - the game configuration (it is not modified).
+     */
+    public Simulation(Logger logger, Properties properties) {
+        this.logger = logger;
+        Config original = new Config(logger, properties);
+        config = new Config(logger, simulationProperties(properties, original));
+    }
+
+    /**
+     * @return - the configuration for the simulation: all the players are computer players, the delays are scaled and
+     *           there are no hints, logs or end game pause.
+     */
+    private static Properties simulationProperties(Properties properties, Config original) {
+        Properties simulation = new Properties();
+        simulation.putAll(properties);
+        simulation.setProperty("HumanPlayers", "0");
+        simulation.setProperty("ComputerPlayers", Integer.toString(original.players));
+        simulation.setProperty("LogLevel", "OFF");
+        simulation.setProperty("Hints", "False");
+        simulation.setProperty("EndGamePauseSeconds", "0");
+        double scale = original.simulationTimeScale;
+        simulation.setProperty("TableDelaySeconds", seconds(original.tableDelayMillis, scale));
+        simulation.setProperty("PointFreezeSeconds", seconds(original.pointFreezeMillis, scale));
+        simulation.setProperty("PenaltyFreezeSeconds", seconds(original.penaltyFreezeMillis, scale));
+        simulation.setProperty("ComputerDelaySeconds", seconds(original.computerDelayMillis, scale));
+        simulation.setProperty("ComputerReactionSeconds", seconds(original.computerReactionMillis, scale));
+        if (original.turnTimeoutMillis > 0) {
+            simulation.setProperty("TurnTimeoutSeconds", seconds(original.turnTimeoutMillis, scale));
+            simulation.setProperty("TurnTimeoutWarningSeconds", seconds(original.turnTimeoutWarningMillis, scale));
+        }
+        return simulation;
+    }
+
+    private static String seconds(long millis, double scale) {
+        return Double.toString(millis * scale / 1000.0);
+    }
+
+    /**
+     * Plays the games and prints the report.
+     *
+     * @param games - the number of games to play.
+     * @throws InterruptedException - if interrupted while waiting for a game to end.
+     */
+    public void run(int games) throws InterruptedException {
+        GameHost host = new GameHost(logger, config);
+        int tables = Math.min(config.simulationTables, games);
+        ThreadLogger[] workers = new ThreadLogger[tables];
+        long start = System.nanoTime();
+        try {
+            for (int table = 0; table < tables; ++table) {
+                workers[table] = new ThreadLogger(() -> play(host, games), "table-" + table, logger);
+                workers[table].startWithLog();
+            }
+            for (ThreadLogger worker : workers)
+                worker.joinWithLog();
+        } finally {
+            host.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LongSummaryStatistics verdicts = verdictStatistics();
+        System.out.printf("Simulated %d games of %d players on %d tables in %.2f seconds: %.2f games/sec, %.1f sets/sec%n",
+                games, config.players, tables, seconds, games / seconds, setsTaken() / seconds);
+        System.out.printf("Verdict latency: average %.3f ms, max %.3f ms (%d claims)%n",
+                verdicts.getAverage() / TimeUnit.MILLISECONDS.toNanos(1),
+                verdicts.getCount() == 0 ? 0.0 : (double) verdicts.getMax() / TimeUnit.MILLISECONDS.toNanos(1),
+                verdicts.getCount());
+    }
+
+    /**
+     * Plays games on one table, one after the other, until all the games were played.
+     *
+     * @param host  - the host of the games.
+     * @param games - the number of games to play (on all the tables).
+     */
+    private void play(GameHost host, int games) {
+        while (played.getAndIncrement() < games) {
+            GameHost.Game game = host.play();
+            synchronized (verdictNanos) {
+                ++finished;
+                sets += game.dealer.setsTaken();
+                verdictNanos.combine(game.dealer.verdictStatistics());
+            }
+        }
+    }
+
+    /**
+     * @return - the number of games played to the end.
+     */
+    public int gamesPlayed() {
+        synchronized (verdictNanos) {
+            return finished;
+        }
+    }
+
+    /**
+     * @return - the number of sets taken in all the games.
+     */
+    public long setsTaken() {
+        synchronized (verdictNanos) {
+            return sets;
+        }
+    }
+
+    /**
+     * @return - the verdict latencies (in nanoseconds) of all the games.
+     */
+    public LongSummaryStatistics verdictStatistics() {
+        synchronized (verdictNanos) {
+            LongSummaryStatistics copy = new LongSummaryStatistics();
+            copy.combine(verdictNanos);
+            return copy;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package bguspl.set;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class ThreadLogger extends Thread {
@@ -25,10 +26,10 @@ public class ThreadLogger extends Thread {
     }
 
     public static void logStart(Logger logger, String name) {
-        logger.info("thread " + name + " starting.");
+        logger.log(Level.INFO, "thread {0} starting.", name);
     }
 
     public static void logStop(Logger logger, String name) {
-        logger.info("thread " + name + " terminated.");
+        logger.log(Level.INFO, "thread {0} terminated.", name);
     }
 }
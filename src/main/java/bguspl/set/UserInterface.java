@@ -12,6 +12,12 @@ public interface UserInterface {
      */
     void placeCard(int card, int slot);
 
+    /**
+     * Get ready to draw cards that are about to be placed (e.g. load their images in the background).
+     * @param cards - the card ids.
+     */
+    default void prepareCards(int[] cards) {}
+
     /**
      * Draw an empty card image in the specified slot.
      * @param slot - the slot number (for grid; slot = row*row.length + column).
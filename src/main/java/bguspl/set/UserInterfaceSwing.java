@@ -4,10 +4,15 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
+import java.awt.image.BufferedImage;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -15,6 +20,9 @@ import static java.lang.String.format;
 
 /**
  * Java Swing implementation of the UserInterface interface.
+ * The game threads do not touch Swing components: they record their changes (the changed table slots, and the latest
+ * text of every other component) and request a frame, and a single frame on the event dispatch thread applies all
+ * the changes recorded since the previous one and repaints only the changed table cells.
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
@@ -24,15 +32,30 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final WinnerPanel winnerPanel;
     private final Config config;
 
-    static String intInBaseToPaddedString(int n, int padding, int base) {
-        return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
-    }
+    /**
+     * True iff a frame was requested and did not start yet.
+     */
+    private final AtomicBoolean frameRequested = new AtomicBoolean();
+
+    /**
+     * The latest update of every component other than the table cells, by component (run by the next frame).
+     */
+    private final Map<Object, Runnable> updates = new ConcurrentHashMap<>();
 
     public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+        this(logger, config, players, CardImageCache.shared(config), sharedAtlas(logger, config));
+    }
+
+    /**
+     * @param cards - the card images (shared by the windows of one process).
+     * @param atlas - the card atlas to draw the cards from (shared by the windows of one process), or null to draw
+     *                the card images instead.
+     */
+    public UserInterfaceSwing(Logger logger, Config config, Player[] players, CardImageCache cards, CardAtlas atlas) {
 
         this.config = config;
         timerPanel = new TimerPanel();
-        gamePanel = new GamePanel();
+        gamePanel = new GamePanel(cards, atlas);
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
 
@@ -69,6 +92,51 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         EventQueue.invokeLater(() -> setVisible(true));
     }
 
+    /**
+     * @return - the shared card atlas, or null if it is not configured or cannot be built.
+     */
+    private static CardAtlas sharedAtlas(Logger logger, Config config) {
+        if (!config.cardAtlas) return null;
+        try {
+            return CardAtlas.shared(config, logger);
+        } catch (UncheckedIOException e) {
+            logger.severe("warning: cannot build the card atlas, drawing the card images instead: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Makes sure a frame runs on the event dispatch thread after the changes recorded so far (one frame for a burst
+     * of changes).
+     */
+    private void requestFrame() {
+        if (frameRequested.compareAndSet(false, true))
+            EventQueue.invokeLater(this::frame);
+    }
+
+    /**
+     * Records the latest update of a component, replacing any earlier update of it that was not applied yet.
+     *
+     * @param component - the component to update.
+     * @param update    - the update, run on the event dispatch thread.
+     */
+    private void update(Object component, Runnable update) {
+        updates.put(component, update);
+        requestFrame();
+    }
+
+    /**
+     * Applies the changes recorded since the previous frame (runs on the event dispatch thread).
+     */
+    private void frame() {
+        frameRequested.set(false);
+        gamePanel.update();
+        for (Object component : updates.keySet()) {
+            Runnable update = updates.remove(component);
+            if (update != null) update.run();
+        }
+    }
+
     private class TimerPanel extends JPanel {
 
         private final JLabel timerField;
@@ -103,112 +171,197 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private class GamePanel extends JLayeredPane {
 
         private final Image emptyCard;
-        private final Image[] deck;
+        private final CardImageCache cards;
+
+        /**
+         * The atlas the cards are drawn from (null if the card images are drawn instead).
+         */
+        private final CardAtlas atlas;
+
+        /**
+         * The card shown in every cell (-1 for none), and its image if there is no atlas.
+         */
+        private final int[][] gridCards;
         private final Image[][] grid;
-        private final boolean[][][] playerTokens;
-        private final JLabel[][] tokenText;
-
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
 
-        private GamePanel() {
+        /**
+         * The players with a token in every slot: bit p of word slot * tokenWords + p / 64 is set iff player
+         * (word * 64 + p) has a token on the slot.
+         */
+        private final AtomicLongArray tokens;
+        private final int tokenWords;
+
+        /**
+         * The token label of every player (the player's name in the player's color), drawn over the cards.
+         */
+        private final BufferedImage[] tokenLabels;
+
+        /**
+         * The card in every slot (-1 for none), as recorded by the game threads.
+         */
+        private final int[] slotCards;
+
+        /**
+         * The slots changed since the last frame, as a bitmask (the table has at most Config.MAX_TABLE_SIZE slots, which
+         * Config enforces). Setting a slot's bit publishes the changes to it to the next frame.
+         */
+        private final AtomicLong dirtySlots = new AtomicLong();
+
+        private GamePanel(CardImageCache cards, CardAtlas atlas) {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
 
-            // init deck and load all pictures from png files
+            // the card images are loaded when the cards are first dealt
             assert config.featureSize < 10; // otherwise there will be naming conflicts
+            this.cards = cards;
+            this.atlas = atlas;
+            emptyCard = atlas == null ? CardImageCache.load("cards/empty_card.png") : null;
 
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
-
+            slotCards = new int[config.tableSize];
+            Arrays.fill(slotCards, -1);
+            gridCards = new int[config.rows][config.columns];
             grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
                     // init the cards on the table grid as empty cards
+                    gridCards[row][column] = -1;
                     grid[row][column] = emptyCard;
-
-                    // init the JLabel selection overlay
-                    tokenText[row][column] = new JLabel("");
-                    tokenText[row][column].setVerticalAlignment(JLabel.TOP);
-                    tokenText[row][column].setHorizontalAlignment(JLabel.CENTER);
-                    tokenText[row][column].setOpaque(false);
-                    tokenText[row][column].setBorder(BorderFactory.createLineBorder(Color.black));
-                    tokenText[row][column].setBounds((column * config.cellWidth), (row * config.cellHeight), config.cellWidth, config.cellHeight);
-                    add(tokenText[row][column]);
                 }
             }
+
+            tokenWords = (config.players + 63) / 64;
+            tokens = new AtomicLongArray(config.tableSize * tokenWords);
+            tokenLabels = new BufferedImage[config.players];
+            Font font = new Font("Serif", Font.BOLD, Math.max(12, config.fontSize / 2));
+            for (int player = 0; player < config.players; player++) {
+                Color color = Color.getHSBColor((float) player / config.players, 1f, 0.6f);
+                tokenLabels[player] = createTokenLabel(config.playerNames[player], font, color);
+            }
+        }
+
+        /**
+         * @return - an image of the text in the color, on a translucent white background.
+         */
+        private BufferedImage createTokenLabel(String text, Font font, Color color) {
+            BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D measure = scratch.createGraphics();
+            FontMetrics metrics = measure.getFontMetrics(font);
+            measure.dispose();
+
+            int width = Math.min(config.cellWidth, metrics.stringWidth(text) + 8);
+            BufferedImage label = new BufferedImage(width, metrics.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = label.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(new Color(255, 255, 255, 200));
+            g.fillRoundRect(0, 0, label.getWidth(), label.getHeight(), 8, 8);
+            g.setColor(color);
+            g.setFont(font);
+            g.drawString(text, 4, metrics.getAscent());
+            g.dispose();
+            return label;
         }
 
         private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+            slotCards[slot] = card;
+            changed(slot);
         }
 
         private void removeCard(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+            slotCards[slot] = -1;
+            changed(slot);
         }
 
         private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            long bit = 1L << player;
+            tokens.getAndUpdate(slot * tokenWords + player / 64, word -> word | bit);
+            changed(slot);
         }
 
         private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
-                removeTokens(i);
+            for (int slot = 0; slot < config.tableSize; slot++)
+                removeTokens(slot);
         }
 
         private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            for (int word = 0; word < tokenWords; word++)
+                tokens.set(slot * tokenWords + word, 0);
+            changed(slot);
         }
 
         private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            long bit = 1L << player;
+            tokens.getAndUpdate(slot * tokenWords + player / 64, word -> word & ~bit);
+            changed(slot);
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
+        /**
+         * Marks a slot as changed and requests a frame to show it.
+         *
+         * @param slot - the slot.
+         */
+        private void changed(int slot) {
+            long bit = 1L << slot;
+            if ((dirtySlots.getAndUpdate(dirty -> dirty | bit) & bit) == 0)
+                requestFrame();
+        }
+
+        /**
+         * Shows the changed slots: updates their cards, and requests a repaint of their cells (with their tokens) only,
+         * which the repaint manager merges into a single paint (runs on the event dispatch thread).
+         */
+        private void update() {
+            long dirty = dirtySlots.getAndSet(0);
+            for (; dirty != 0; dirty &= dirty - 1) {
+                int slot = Long.numberOfTrailingZeros(dirty);
+                int row = slot / config.columns;
+                int column = slot % config.columns;
+                int card = slotCards[slot];
+                gridCards[row][column] = card;
+                if (atlas == null) {
+                    // an image that is not loaded yet is shown as an empty card until its load marks the slot again
+                    Image image = card < 0 ? emptyCard : cards.get(card, () -> changed(slot));
+                    grid[row][column] = image == null ? emptyCard : image;
+                }
+                repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
             }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+            // draw the card images of the cells in the clip only
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(getSize());
+            int firstRow = Math.max(0, clip.y / config.cellHeight);
+            int lastRow = Math.min(config.rows - 1, (clip.y + clip.height - 1) / config.cellHeight);
+            int firstColumn = Math.max(0, clip.x / config.cellWidth);
+            int lastColumn = Math.min(config.columns - 1, (clip.x + clip.width - 1) / config.cellWidth);
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int x = column * config.cellWidth;
+                    int y = row * config.cellHeight;
+                    if (atlas != null)
+                        atlas.draw(g, gridCards[row][column], x, y, this);
+                    else
+                        g.drawImage(grid[row][column], x, y, this);
+                    g.setColor(Color.BLACK);
+                    g.drawRect(x, y, config.cellWidth - 1, config.cellHeight - 1);
+                    drawTokens(g, row * config.columns + column, x, y);
+                }
+        }
+
+        /**
+         * Draws the token labels of the players with a token on the slot, one under the other from the top of its
+         * cell.
+         */
+        private void drawTokens(Graphics g, int slot, int x, int y) {
+            int top = y + 2;
+            for (int word = 0; word < tokenWords; word++) {
+                for (long players = tokens.get(slot * tokenWords + word); players != 0; players &= players - 1) {
+                    BufferedImage label = tokenLabels[word * 64 + Long.numberOfTrailingZeros(players)];
+                    g.drawImage(label, x + (config.cellWidth - label.getWidth()) / 2, top, this);
+                    top += label.getHeight();
+                }
+            }
         }
     }
 
@@ -279,6 +432,11 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel.placeCard(slot, card);
     }
 
+    @Override
+    public void prepareCards(int[] cards) {
+        if (gamePanel.atlas == null) gamePanel.cards.prefetch(cards);
+    }
+
     @Override
     public void removeCard(int slot) {
         gamePanel.removeCard(slot);
@@ -306,29 +464,31 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        update(timerPanel, () -> timerPanel.setCountdown(millies, warn));
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        update(timerPanel, () -> timerPanel.setElapsed(millies));
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        update(playersPanel.playersTable[0][player], () -> playersPanel.setFreeze(player, millies));
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        update(playersPanel.playersTable[1][player], () -> playersPanel.setScore(player, score));
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        update(winnerPanel, () -> {
+            playersPanel.setVisible(false);
+            winnerPanel.announceWinner(players);
+            winnerPanel.setVisible(true);
+        });
     }
 
     @Override
@@ -1,6 +1,7 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -40,6 +41,24 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Lazily enumerates the sets in the given collection of cards: sets are only searched for as the stream is
+     * consumed, so the caller can stop early (e.g. findFirst) or split the search (parallel streams).
+     *
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - a stream of integer arrays, each one contains the card ids of a legal set.
+     */
+    Stream<int[]> streamSets(List<Integer> deck);
+
+    /**
+     * Counts the sets in the given collection of cards, without creating them.
+     *
+     * @param deck - a collection of cards (may not include null objects).
+     * @param max  - the maximum number of sets to count.
+     * @return - the number of sets found (at most max).
+     */
+    int countSets(List<Integer> deck, int max);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -3,18 +3,65 @@ package bguspl.set;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
  */
 public class UtilImpl implements Util {
 
+    /**
+     * The minimum number of cards to search for sets in parallel (when enabled in the config).
+     */
+    private static final int PARALLEL_MIN_CARDS = 100;
+
     private final Config config;
 
+    /**
+     * The features of every card in the deck (computed once, at construction).
+     */
+    private final int[][] features;
+
+    /**
+     * The packed encoding of every card in the deck: featureSize bits per feature, with exactly one bit set in each
+     * (e.g. with 3 values per feature, the values 0, 1, 2 are encoded as 001, 010, 100). Null if the features do not
+     * fit in a long (FeatureCount x FeatureSize over 64), in which case the features are compared one by one.
+     */
+    private final long[] packed;
+
+    /**
+     * The bits of each feature in the packed encoding.
+     */
+    private final long[] featureMasks;
+
     public UtilImpl(Config config) {
         this.config = config;
+        features = new int[config.deckSize][config.featureCount];
+        for (int card = 0; card < config.deckSize; ++card)
+            cardToFeatures(card, features[card]);
+
+        if ((long) config.featureCount * config.featureSize > Long.SIZE) {
+            packed = null;
+            featureMasks = null;
+            return;
+        }
+        featureMasks = new long[config.featureCount];
+        for (int i = 0; i < config.featureCount; ++i)
+            featureMasks[i] = (-1L >>> (Long.SIZE - config.featureSize)) << (i * config.featureSize);
+
+        packed = new long[config.deckSize];
+        for (int card = 0; card < config.deckSize; ++card)
+            for (int i = 0; i < config.featureCount; ++i)
+                packed[card] |= 1L << (i * config.featureSize + features[card][i]);
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -26,46 +73,304 @@ public class UtilImpl implements Util {
 
     @Override
     public int[] cardToFeatures(int card) {
-        int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
-        return features;
+        return features[card].clone();
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        int[][] features = new int[cards.length][];
+        for (int i = 0; i < cards.length; ++i)
+            features[i] = cardToFeatures(cards[i]);
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
-
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
+        if (cards.length < 2) return false;
+        if (packed == null) return testSetUnpacked(cards);
 
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
+        // a feature is sameSame iff its bit survives the and, and butDifferent iff the or has a bit per card
+        long and = -1L, or = 0L;
+        for (int card : cards) {
+            and &= packed[card];
+            or |= packed[card];
+        }
+        for (long mask : featureMasks)
+            if ((and & mask) == 0 && Long.bitCount(or & mask) != cards.length) return false;
+        return true;
+    }
 
-            if (sameSame == butDifferent) return false;
+    /**
+     * Tests a set feature by feature (used when the features do not fit in a long).
+     */
+    private boolean testSetUnpacked(int[] cards) {
+        boolean[] seen = new boolean[config.featureSize];
+        for (int i = 0; i < config.featureCount; ++i) {
+            int value = features[cards[0]][i];
+            boolean sameSame = true;
+            Arrays.fill(seen, false);
+            int distinct = 0;
+            for (int card : cards) {
+                int other = features[card][i];
+                sameSame &= other == value;
+                if (!seen[other]) {
+                    seen[other] = true;
+                    ++distinct;
+                }
+            }
+            if (!sameSame && distinct != cards.length) return false;
         }
         return true;
     }
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        if (config.featureSize < 3) return findSetsByCombinations(deck, count);
+
+        SetSpliterator spliterator = spliterator(deck);
+        if (config.parallelFindSets && deck.size() >= PARALLEL_MIN_CARDS)
+            return findSetsInParallel(spliterator, count);
+
+        LinkedList<int[]> sets = new LinkedList<>();
+        while (sets.size() < count && spliterator.advance())
+            sets.add(spliterator.current());
+        return sets;
+    }
+
+    @Override
+    public Stream<int[]> streamSets(List<Integer> deck) {
+        if (config.featureSize < 3) return findSetsByCombinations(deck, Integer.MAX_VALUE).stream();
+        return StreamSupport.stream(spliterator(deck), false);
+    }
+
+    @Override
+    public int countSets(List<Integer> deck, int max) {
+        if (config.featureSize < 3) return findSetsByCombinations(deck, max).size();
+
+        SetSpliterator spliterator = spliterator(deck);
+        int sets = 0;
+        while (sets < max && spliterator.advance())
+            ++sets;
+        return sets;
+    }
+
+    /**
+     * Creates a lazy search for the sets in the given collection of cards.
+     */
+    private SetSpliterator spliterator(List<Integer> deck) {
+        int[] cards = deck.stream().mapToInt(Integer::intValue).sorted().toArray();
+
+        // the card-presence index used to look up the completing card of each combination
+        boolean[] present = new boolean[config.deckSize];
+        for (int card : cards) present[card] = true;
+
+        return new SetSpliterator(cards, present, 0, cards.length);
+    }
+
+    /**
+     * A lazy search for sets: every combination of featureSize - 1 cards is completed to a set, and the completing
+     * card is looked up in the card-presence index. The search can be split by the smallest card of the sets.
+     */
+    private class SetSpliterator implements Spliterator<int[]> {
+
+        private final int[] cards; // sorted
+        private final boolean[] present;
+
+        /**
+         * The index (in cards) of the smallest card of the sets currently searched, and the end of the search range.
+         */
+        private int first, to;
+
+        /**
+         * The next partial set to complete (indices in cards, starting with first).
+         */
+        private final int[] combination;
+
+        /**
+         * The last set found (reused between sets).
+         */
+        private final int[] current;
+
+        private SetSpliterator(int[] cards, boolean[] present, int from, int to) {
+            this.cards = cards;
+            this.present = present;
+            this.first = from;
+            this.to = to;
+            combination = new int[config.featureSize - 1];
+            current = new int[config.featureSize];
+            for (int i = 0; i < combination.length; ++i)
+                combination[i] = first + i;
+        }
+
+        /**
+         * Moves to the next set, without allocating anything.
+         *
+         * @return - true iff another set was found (see current()).
+         */
+        private boolean advance() {
+            int n = cards.length;
+            int r = combination.length; // the last card of each set is computed rather than searched for
+            while (first < to) {
+                while (combination[r - 1] < n) {
+                    // the completing card must be larger than the rest, so that each set is reported exactly once
+                    int completing = completeSet(cards, combination);
+                    boolean found = completing > cards[combination[r - 1]] && present[completing];
+                    if (found) {
+                        for (int i = 0; i < r; ++i) current[i] = cards[combination[i]];
+                        current[r] = completing;
+                    }
+
+                    // generate next combination in lexicographic order (the first card stays in place)
+                    int t = r - 1;
+                    while (t != 1 && combination[t] == n - r + t) --t;
+                    combination[t]++;
+                    for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+
+                    if (found) return true;
+                }
+                if (++first < to)
+                    for (int i = 0; i < r; ++i)
+                        combination[i] = first + i;
+            }
+            return false;
+        }
+
+        /**
+         * @return - a copy of the last set found.
+         */
+        private int[] current() {
+            return current.clone();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            if (!advance()) return false;
+            action.accept(current());
+            return true;
+        }
+
+        @Override
+        public Spliterator<int[]> trySplit() {
+            // only the first cards that were not searched yet can be handed over
+            int from = first + 1;
+            if (to - from < 2) return null;
+            int middle = (from + to) >>> 1;
+            SetSpliterator split = new SetSpliterator(cards, present, middle, to);
+            to = middle;
+            return split;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.max(to - first, 0);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * Finds sets on the common fork/join pool, splitting the search by the smallest card of the sets.
+     * The search is cancelled as soon as count sets are found.
+     */
+    private List<int[]> findSetsInParallel(SetSpliterator spliterator, int count) {
+        Queue<int[]> sets = new ConcurrentLinkedQueue<>();
+        ForkJoinPool.commonPool().invoke(new FindSetsTask(spliterator, count, sets, new AtomicInteger()));
+        return new LinkedList<>(sets);
+    }
+
+    private class FindSetsTask extends RecursiveAction {
+
+        private final SetSpliterator spliterator;
+        private final int count;
+        private final Queue<int[]> sets;
+        private final AtomicInteger found;
+
+        private FindSetsTask(SetSpliterator spliterator, int count, Queue<int[]> sets, AtomicInteger found) {
+            this.spliterator = spliterator;
+            this.count = count;
+            this.sets = sets;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (found.get() >= count) return;
+            Spliterator<int[]> split = spliterator.trySplit();
+            if (split != null) {
+                invokeAll(new FindSetsTask((SetSpliterator) split, count, sets, found),
+                        new FindSetsTask(spliterator, count, sets, found));
+                return;
+            }
+            while (found.get() < count && spliterator.advance()) {
+                int index = found.incrementAndGet();
+                if (index <= count) sets.add(spliterator.current());
+            }
+        }
+    }
+
+    /**
+     * Computes the unique card that completes the given cards (featureSize - 1 of them) to a legal set.
+     *
+     * @param cards       - the sorted card ids.
+     * @param combination - the indices (in cards) of the partial set.
+     * @return - the id of the completing card, or -1 if no card can complete the partial set.
+     */
+    private int completeSet(int[] cards, int[] combination) {
+        if (packed == null) return completeSetUnpacked(cards, combination);
+        long and = -1L, or = 0L;
+        for (int index : combination) {
+            and &= packed[cards[index]];
+            or |= packed[cards[index]];
+        }
+
+        int completing = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            long value;
+            if ((and & featureMasks[i]) != 0) value = and & featureMasks[i]; // sameSame: the same value again
+            else if (Long.bitCount(or & featureMasks[i]) == combination.length)
+                value = ~or & featureMasks[i]; // butDifferent: the one value not used yet
+            else return -1;
+            completing = completing * config.featureSize + Long.numberOfTrailingZeros(value) - i * config.featureSize;
+        }
+        return completing;
+    }
+
+    /**
+     * Computes the completing card feature by feature (used when the features do not fit in a long).
+     */
+    private int completeSetUnpacked(int[] cards, int[] combination) {
+        boolean[] seen = new boolean[config.featureSize];
+        int completing = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int value = features[cards[combination[0]]][i];
+            boolean sameSame = true;
+            Arrays.fill(seen, false);
+            int distinct = 0;
+            for (int index : combination) {
+                int other = features[cards[index]][i];
+                sameSame &= other == value;
+                if (!seen[other]) {
+                    seen[other] = true;
+                    ++distinct;
+                }
+            }
+            if (!sameSame) {
+                if (distinct != combination.length) return -1;
+                value = 0;
+                while (seen[value]) ++value; // butDifferent: the one value not used yet
+            }
+            completing = completing * config.featureSize + value;
+        }
+        return completing;
+    }
+
+    /**
+     * Finds sets by testing every combination of cards (used when sets are too small to be completed).
+     */
+    private List<int[]> findSetsByCombinations(List<Integer> deck, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
         int n = deck.size();
         int r = config.featureSize;
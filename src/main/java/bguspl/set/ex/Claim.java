@@ -0,0 +1,28 @@
+package bguspl.set.ex;
+
+/**
+ * A player's claim that its tokens are on a legal set, waiting for the dealer's verdict.
+ */
+class Claim {
+
+    /**
+     * The id of the claiming player.
+     */
+    final int player;
+
+    /**
+     * The slots the player's tokens were on when the claim was made.
+     */
+    final int[] slots;
+
+    /**
+     * The time (System.nanoTime) when the claim was made.
+     */
+    final long time;
+
+    Claim(int player, int[] slots) {
+        this.player = player;
+        this.slots = slots;
+        this.time = System.nanoTime();
+    }
+}
@@ -2,16 +2,15 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LongSummaryStatistics;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
@@ -31,9 +30,25 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck are deck[0] to deck[deckCount - 1], in the order they are
+     * dealt (from the end).
      */
-    private final List<Integer> deck;
+    private final int[] deck;
+
+    /**
+     * The number of cards left in the dealer's deck.
+     */
+    private volatile int deckCount;
+
+    /**
+     * Shuffles the deck (seeded by the DeckSeed setting, if set).
+     */
+    private final Random random;
+
+    /**
+     * The legal sets that can still be formed from the cards in play (in the deck or on the table).
+     */
+    private final SetCounter inPlay;
 
     /**
      * True iff game should be terminated due to an external event.
@@ -41,22 +56,82 @@ public class Dealer implements Runnable {
     private volatile boolean terminate;
 
     /**
-     * The time when the dealer needs to reshuffle the deck due to turn timeout.
+     * The time (System.nanoTime) when the dealer needs to reshuffle the deck due to turn timeout.
+     */
+    private long reshuffleTime;
+
+    /**
+     * The time (System.nanoTime) when the turn timer was last reset (used to display the elapsed time).
+     */
+    private long resetTime;
+
+    /**
+     * The time (System.nanoTime) when the timer display should be updated next.
+     */
+    private long displayTime;
+
+    /**
+     * The interval between timer display updates during the turn timeout warning.
+     */
+    private static final long WARNING_DISPLAY_MILLIS = 10;
+
+    /**
+     * The players' claims, in order of arrival (many players add claims, only the dealer thread takes them).
+     */
+    private final Queue<Claim> claims;
+
+    /**
+     * Runs the computer players' key press simulators.
      */
-    private long reshuffleTime = Long.MAX_VALUE;; //env.config.turnTimeoutMillis;//Long.MAX_VALUE;
+    private final PlayerRuntime runtime;
 
-    public Queue<Integer> firstPlayerTo3;
+    /**
+     * True iff the runtime was created by (and should be shut down with) this dealer.
+     */
+    private final boolean ownsRuntime;
 
-    public Thread dealerThread;
+    /**
+     * The time from each claim to the dealer's verdict on it, in nanoseconds.
+     */
+    private final LongSummaryStatistics verdictNanos = new LongSummaryStatistics();
+
+    /**
+     * The number of sets the players took.
+     */
+    private int setsTaken;
+
+    /**
+     * The dealer thread, unparked by the claims (set when the thread starts, read by the claiming threads).
+     */
+    private volatile Thread dealerThread;
 
     private boolean reset;
 
     public Dealer(Env env, Table table, Player[] players) {
+        this(env, table, players, PlayerRuntime.create(env.config, env.logger), true);
+    }
+
+    /**
+     * @param runtime - the player runtime (shared, it is not shut down when the game ends).
+     */
+    public Dealer(Env env, Table table, Player[] players, PlayerRuntime runtime) {
+        this(env, table, players, runtime, false);
+    }
+
+    private Dealer(Env env, Table table, Player[] players, PlayerRuntime runtime, boolean ownsRuntime) {
         this.env = env;
+        this.runtime = runtime;
+        this.ownsRuntime = ownsRuntime;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        firstPlayerTo3 = new LinkedList<Integer>();
+        deck = IntStream.range(0, env.config.deckSize).toArray();
+        deckCount = deck.length;
+        random = env.config.deckSeed != 0 ? new Random(env.config.deckSeed) : new Random();
+        shuffleDeck();
+        inPlay = new SetCounter(env);
+        for (int card : deck)
+            inPlay.add(card);
+        claims = new ConcurrentLinkedQueue<>();
         reset = false;
     }
 
@@ -66,11 +141,9 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         dealerThread = Thread.currentThread();
-        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-        for (Player player : players) {
-            player.playerThread = new Thread(player);
-            player.playerThread.start();
-        }
+        env.logger.log(Level.INFO, "Thread {0} starting.", Thread.currentThread().getName());
+        for (Player player : players)
+            player.start(runtime);
         while (!shouldFinish()) {
             placeCardsOnTable();
             timerLoop();
@@ -78,7 +151,10 @@ public class Dealer implements Runnable {
             removeAllCardsFromTable();
         }
         announceWinners();
-        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
+        for (int i = players.length - 1; i >= 0; --i)
+            players[i].terminate();
+        if (ownsRuntime) runtime.shutdown();
+        env.logger.log(Level.INFO, "Thread {0} terminated.", Thread.currentThread().getName());
     }
 
     /**
@@ -86,16 +162,23 @@ public class Dealer implements Runnable {
      */
     private void timerLoop() {
         updateTimerDisplay(true);
-        while (!terminate && System.currentTimeMillis() < reshuffleTime && table.countCards()>0) {
+        while (!terminate && !timedOut() && table.countCards()>0 && !noSetsLeft()) {
             sleepUntilWokenOrTimeout(); //player notify dealer to check if there is a set
-            updateTimerDisplay(reset);
-            reset = false;
             removeCardsFromTable(); //cards are removed if the dealer founds set
             placeCardsOnTable(); //new cards are placed
+            updateTimerDisplay(reset);
+            reset = false;
         }
 
     }
 
+    /**
+     * @return true iff the turn timed out and the dealer should reshuffle the deck.
+     */
+    private boolean timedOut() {
+        return env.config.turnTimeoutMillis > 0 && System.nanoTime() - reshuffleTime >= 0;
+    }
+
     /**
      * Called when the game should be terminated due to an external event.
      */
@@ -114,6 +197,8 @@ public class Dealer implements Runnable {
             }*/
         }
         terminate = true;
+        if(dealerThread != null)
+            LockSupport.unpark(dealerThread);
         
         env.ui.dispose();
     }
@@ -124,7 +209,28 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || inPlay.any() == null;
+    }
+
+    /**
+     * Check if the round can not go on: there is no set on the table, and either the deck is empty or there is no
+     * turn timeout to wait for (then the cards are reshuffled at once).
+     *
+     * @return true iff no more sets can be claimed in this round.
+     */
+    private boolean noSetsLeft() {
+        return (deckCount == 0 || env.config.turnTimeoutMillis <= 0) && table.findSet() == null;
+    }
+
+    /**
+     * Called by a player that placed its third token: queues the claim and wakes the dealer up to check it.
+     *
+     * @param player - the id of the claiming player.
+     * @param slots  - the slots of the player's tokens.
+     */
+    public void claim(int player, int[] slots) {
+        claims.add(new Claim(player, slots));
+        LockSupport.unpark(dealerThread); // set before the players start, and volatile, so never seen as null here
     }
 
     /**
@@ -132,48 +238,32 @@ public class Dealer implements Runnable {
      */
     private void removeCardsFromTable() {
         // TODO implement
-        while(!firstPlayerTo3.isEmpty())
+        Claim claim;
+        while((claim = claims.poll()) != null)
         {
-            int firstId = firstPlayerTo3.remove();
-            boolean isSet = false;
-            for(int i=0; i < players.length; i++)
+            Player player = players[claim.player];
+            // the claim only stands if the player's tokens are still on all the claimed slots (and cards)
+            long claimed = 0;
+            for(int slot : claim.slots)
+                claimed |= 1L << slot;
+            // (a claim that an earlier claim's set or a reshuffle overtook is dropped, with no penalty)
+            if(table.tokens(player.id) != claimed || Arrays.stream(claim.slots).anyMatch(slot -> table.slotToCard[slot] == Table.EMPTY)){
+                player.claimDropped();
+                continue;
+            }
+            int [] cards = Arrays.stream(claim.slots).map(slot -> table.slotToCard[slot]).toArray();
+            boolean isSet = env.util.testSet(cards);
+            if(isSet)
             {
-                if(players[i].id == firstId)
-                {
-                    synchronized(players[i]){
-                        if(players[i].actions.size() == 3){
-                            int [] actionsArray = players[i].actions.stream().mapToInt(j -> table.slotToCard[j]).toArray();
-                            isSet = env.util.testSet(actionsArray);
-                            if(isSet)
-                            {
-                                for(int k=0; k<players[i].actions.size(); k++){
-                                    table.removeToken(i, players[i].actions.get(k));
-                                    for (Player p :players) {
-                                        try{
-                                            if(p.id!=players[i].id){
-                                                table.removeToken(p.id, players[i].actions.get(k));
-                                                p.actions.remove(p.actions.indexOf(players[i].actions.get(k)));
-                                            }
-                                        }catch(Exception e){}
-                                    }
-                                    table.removeCard(players[i].actions.get(k));
-                                }
-                                players[i].actions.clear();
-                                reset = true;
-                            }
-                        } 
-                        players[i].notifyAll();
-                        if(isSet){
-                            players[i].point = true;
-                        }
-                        else{
-                            players[i].penalty = true;
-                        }
-                    }
-                }
+                // the tokens of all the players on these slots are removed with the cards
+                for(int card : table.removeCards(claim.slots))
+                    inPlay.remove(card);
+                reset = true;
+                ++setsTaken;
             }
+            player.verdict(isSet);
+            verdictNanos.accept(System.nanoTime() - claim.time);
         }
-        
     }
 
     /**
@@ -181,18 +271,22 @@ public class Dealer implements Runnable {
      */
     private void placeCardsOnTable() {
         // TODO implement
-        synchronized(table){
-            Random rand = new Random();
-            for(int i=0; i<table.slotToCard.length; i++)
-            {
-                if(table.slotToCard[i] ==null && deck.size()>0){
-                    int index = rand.nextInt(deck.size());
-                    table.placeCard(deck.get(index), i);
-                    deck.remove(index);
-                }
-            }
-            table.notifyAll();
+        // dealt in one batch: the cards are in play at once, and the players are not blocked during the animation
+        long free = table.freeSlots();
+        int count = Math.min(Long.bitCount(free), deckCount);
+        if(count == 0)
+            return;
+        int[] cards = new int[count];
+        int[] slots = new int[count];
+        for(int i = 0; i < count; ++i, free &= free - 1){
+            cards[i] = deck[--deckCount];
+            slots[i] = Long.numberOfTrailingZeros(free);
         }
+        table.placeCards(cards, slots);
+    }
+
+    public void removeCardsFromTableForTest(){
+        removeCardsFromTable();
     }
 
     public void placeCardsOnTableForTest(){
@@ -200,43 +294,48 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until a player makes a claim, or until the timer display needs to be updated (the display is updated on
+     * time also when it is not shown, so the dealer wakes up at least once a second).
      */
     private void sleepUntilWokenOrTimeout() {
         // TODO implement
-        synchronized(dealerThread){
-            try {
-                int time = 0;
-                while(time < 60999 && !terminate){
-                    updateTimerDisplay(reset);
-                    dealerThread.sleep(1000);
-                    time+=1000;
-                    reset = false;
-                }
-            }
-            catch(InterruptedException e)
-            {
-                dealerThread.interrupt();
-            }
-        }
+        long remaining;
+        while(!terminate && claims.isEmpty() && (remaining = displayTime - System.nanoTime()) > 0)
+            LockSupport.parkNanos(this, remaining); // unparked early by a claim
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Reset and/or update the countdown and the countdown display, and set when the display should be updated next.
      */
     private void updateTimerDisplay(boolean reset) {
         // TODO implement
-
+        long now = System.nanoTime();
         if(reset){
-            this.reshuffleTime = System.currentTimeMillis() + 60999;
-            env.ui.setCountdown(60999,false);
+            resetTime = now;
+            reshuffleTime = now + TimeUnit.MILLISECONDS.toNanos(env.config.turnTimeoutMillis);
         }
-        else{
-            if(reshuffleTime-System.currentTimeMillis()<=10000)
-                env.ui.setCountdown(reshuffleTime-System.currentTimeMillis(), true);
-            else
-                env.ui.setCountdown(reshuffleTime-System.currentTimeMillis(), false);
+
+        long nextUpdateMillis = 1000;
+        if(env.config.turnTimeoutMillis > 0){
+            long remaining = Math.max(TimeUnit.NANOSECONDS.toMillis(reshuffleTime - now), 0);
+            boolean warn = remaining <= env.config.turnTimeoutWarningMillis;
+            if(warn){
+                env.ui.setCountdown(remaining, true);
+                nextUpdateMillis = Math.min(WARNING_DISPLAY_MILLIS, remaining);
+            }
+            else{
+                // whole seconds are rounded up, so the full timeout is shown for the first second
+                env.ui.setCountdown((remaining + 999) / 1000 * 1000, false);
+                // the next whole second, or the start of the warning, whichever comes first
+                nextUpdateMillis = Math.min((remaining - 1) % 1000 + 1, remaining - env.config.turnTimeoutWarningMillis);
+            }
+        }
+        else if(env.config.turnTimeoutMillis == 0){
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(now - resetTime);
+            env.ui.setElapsed(elapsed);
+            nextUpdateMillis = 1000 - elapsed % 1000;
         }
+        displayTime = now + TimeUnit.MILLISECONDS.toNanos(Math.max(nextUpdateMillis, 1));
     }
 
     /**
@@ -244,18 +343,26 @@ public class Dealer implements Runnable {
      */
     private void removeAllCardsFromTable() {
         // TODO implement
-        synchronized(table){
-            env.ui.removeTokens();
-            for(Player p: players)
-                p.actions.clear();
-            for(int i=0; i < table.slotToCard.length; i++)
-            {
-                if(table.slotToCard[i] != null)
-                {
-                    deck.add(table.slotToCard[i]);
-                    table.removeCard(i);
-                }
-            }
+        table.removeAllTokens();
+        for(int card : table.removeCards(IntStream.range(0, table.slotToCard.length).toArray()))
+            if(card != Table.EMPTY)
+                deck[deckCount++] = card;
+        shuffleDeck();
+        // the pending claims were on the cards that were just returned to the deck
+        Claim claim;
+        while((claim = claims.poll()) != null)
+            players[claim.player].claimDropped();
+    }
+
+    /**
+     * Shuffles the cards left in the deck (Fisher-Yates).
+     */
+    private void shuffleDeck() {
+        for (int i = deckCount - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int card = deck[i];
+            deck[i] = deck[j];
+            deck[j] = card;
         }
     }
 
@@ -294,8 +401,22 @@ public class Dealer implements Runnable {
         announceWinners();
     }
 
+    /**
+     * @return - the time from each claim to the verdict on it so far, in nanoseconds (read once the game is over).
+     */
+    public LongSummaryStatistics verdictStatistics() {
+        return verdictNanos;
+    }
+
+    /**
+     * @return - the number of sets the players took so far (read once the game is over).
+     */
+    public int setsTaken() {
+        return setsTaken;
+    }
+
     public int countDeck()
     {
-        return deck.size();
+        return deckCount;
     }
 }
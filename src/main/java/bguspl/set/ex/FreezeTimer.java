@@ -0,0 +1,55 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the players' point/penalty freezes. A single shared thread owns all the freeze deadlines: it counts down the
+ * remaining freeze time on the screen once a second and ends each freeze exactly on time, so frozen players do not
+ * need a sleeping thread of their own.
+ */
+class FreezeTimer {
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "freeze-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private FreezeTimer() {}
+
+    /**
+     * Freezes a player for the given time.
+     *
+     * @param env      - the game environment object.
+     * @param player   - the id of the frozen player.
+     * @param millis   - the freeze time in milliseconds.
+     * @param unfreeze - called (on the timer thread) when the freeze is over.
+     */
+    static void freeze(Env env, int player, long millis, Runnable unfreeze) {
+        tick(env, player, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), unfreeze);
+    }
+
+    /**
+     * Shows the remaining freeze time (rounded up to whole seconds) and schedules the next update for when it drops
+     * by a second, or ends the freeze if the deadline has passed.
+     */
+    private static void tick(Env env, int player, long deadline, Runnable unfreeze) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            env.ui.setFreeze(player, 0);
+            unfreeze.run();
+            return;
+        }
+
+        long seconds = (remaining + SECOND - 1) / SECOND;
+        env.ui.setFreeze(player, TimeUnit.SECONDS.toMillis(seconds));
+        long delay = remaining - (seconds - 1) * SECOND;
+        scheduler.schedule(() -> tick(env, player, deadline, unfreeze), delay, TimeUnit.NANOSECONDS);
+    }
+}
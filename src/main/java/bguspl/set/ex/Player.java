@@ -1,22 +1,20 @@
 package bguspl.set.ex;
 
-import java.sql.Array;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Objects;
-import java.util.Queue;
-import java.util.Random;
-import java.util.logging.Level;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import bguspl.set.Env;
 
 /**
- * This class manages the players' threads and data
+ * This class manages the players' data. A player has no thread of its own: its claims are made by keyPressed and
+ * judged by the dealer, and a computer player's key presses are simulated by a task on the player runtime.
  *
  * @inv id >= 0
  * @inv score >= 0
  */
-public class Player implements Runnable {
+public class Player {
 
     /**
      * The game environment object.
@@ -34,14 +32,17 @@ public class Player implements Runnable {
     public final int id;
 
     /**
-     * The thread representing the current player.
+     * The task of the AI (computer) player (a repeating task used to generate key presses).
      */
-    public Thread playerThread;
+    private Future<?> aiTask;
 
     /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
+     * The cards the AI player is going for (null if it has none), the number of verdicts when it chose them and the
+     * time (System.nanoTime) it may start pressing their keys at. Used only by the AI task.
      */
-    private Thread aiThread;
+    private int[] target;
+    private int targetVerdicts;
+    private long reactionDeadline;
 
     /**
      * True iff the player is human (not a computer player).
@@ -58,15 +59,18 @@ public class Player implements Runnable {
      */
     private int score;
 
-    public LinkedList<Integer> actions;
-
     private Dealer dealer;
 
-    public boolean three_slots;
+    public volatile boolean three_slots;
+
+    public volatile boolean point;
 
-    public boolean point;
+    public volatile boolean penalty;
 
-    public boolean penalty;
+    /**
+     * The number of claims the dealer has ruled on (or dropped) so far.
+     */
+    private volatile int verdicts;
 
     /**
      * The class constructor.
@@ -83,104 +87,100 @@ public class Player implements Runnable {
         this.id = id;
         this.human = human;
         this.dealer = dealer;
-        this.actions = new LinkedList<>();
         this.three_slots = false;
         this.point = false;
         this.penalty = false;
     }
 
     /**
-     * The main player thread of each player starts here (main loop for the player thread).
+     * Starts the player: a computer player starts generating key presses on the given runtime.
+     *
+     * @param runtime - the player runtime.
      */
-    @Override
-    public void run() {
-        playerThread = Thread.currentThread();
-        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + "starting.");
-        if (!human) createArtificialIntelligence();
-
-        while (!terminate) {
-            // TODO implement main player loop
-            synchronized(table){
-                try{
-                    while(table.countCards() ==0){
-                        table.wait();
-                    }
-                }catch(InterruptedException e){}
-            }
-            synchronized(actions)
-            {
-                try{
-                    while(actions.isEmpty())
-                        actions.wait();
-                }
-                catch(InterruptedException e){}
-            }
-            if(three_slots){
-                synchronized(this){
-                    try{
-                        dealer.firstPlayerTo3.add(id);
-                        dealer.dealerThread.interrupt();
-                        this.wait();
-                        if(point)
-                            point();     
-                        else if(penalty)
-                            penalty();
-                        
-                    }catch(InterruptedException e){}
-                }
-                three_slots = false;
-            }    
+    public void start(PlayerRuntime runtime) {
+        if (!human) createArtificialIntelligence(runtime);
+    }
+
+    /**
+     * Creates the key press simulator of an AI (computer) player: a task that presses a key of the cards it goes for
+     * repeatedly, as long as the game goes on.
+     *
+     * @param runtime - the player runtime to run the task on.
+     */
+    private void createArtificialIntelligence(PlayerRuntime runtime) {
+        aiTask = runtime.repeat(env, "computer-" + id, this::simulateKeyPress, env.config.computerDelayMillis);
+    }
+
+    /**
+     * A single step of the AI player: it looks for a set on the table (or, at the configured error rate, picks random
+     * cards), waits for its reaction time, and then presses the keys of the cards' slots one at a time, taking back
+     * any token that is not on them first. It looks again after every verdict and whenever one of the cards leaves
+     * the table.
+     */
+    void simulateKeyPress() {
+        if (point || penalty || three_slots || terminate) return;
+
+        long slots = target == null || targetVerdicts != verdicts ? 0 : slotsOf(target);
+        if (slots == 0) {
+            target = chooseTarget();
+            targetVerdicts = verdicts;
+            reactionDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(env.config.computerReactionMillis);
+            return;
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
-        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
+        if (System.nanoTime() - reactionDeadline < 0) return;
+
+        long tokens = table.tokens(id);
+        long extra = tokens & ~slots;
+        long missing = slots & ~tokens;
+        if (extra != 0) keyPressed(Long.numberOfTrailingZeros(extra));
+        else if (missing != 0) keyPressed(Long.numberOfTrailingZeros(missing));
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * @return - a random set on the table or, at the configured error rate, random cards on the table (null if there are
+     *           not enough cards).
      */
-    private void createArtificialIntelligence() {
-        // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-            Integer [] notNullcards;
-            while (!terminate) {
-                // TODO implement player key press simulator
-                synchronized(table){
-                    try{
-                        while(table.countCards() ==0){
-                            table.wait();
-                        }
-                    }catch(InterruptedException e){}
-                }
-                notNullcards = Arrays.stream(table.cardToSlot).filter(Objects::nonNull).toArray(Integer[]::new);
-                System.out.println(notNullcards.length);
-                Random rand = new Random();
-                int cardIndex = rand.nextInt(notNullcards.length);
-                keyPressed(notNullcards[cardIndex]);
-                notNullcards = null;
-                try{
-                    Thread.sleep(1000);
-                }
-                catch(InterruptedException e){}
-    
-            }
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
+    private int[] chooseTarget() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (env.config.computerErrorRate <= 0 || random.nextDouble() >= env.config.computerErrorRate)
+            return table.findSet(random); // a random set, so that the computer players do not all go for the same one
+
+        int[] cards = new int[table.slotToCard.length];
+        int count = 0;
+        for (int card : table.slotToCard)
+            if (card != Table.EMPTY) cards[count++] = card;
+        int setSize = env.config.featureSize;
+        if (count < setSize) return null;
+        // a partial Fisher-Yates shuffle: the first setSize cards are a random choice
+        for (int i = 0; i < setSize; ++i) {
+            int j = i + random.nextInt(count - i);
+            int card = cards[i];
+            cards[i] = cards[j];
+            cards[j] = card;
+        }
+        return Arrays.copyOf(cards, setSize);
+    }
+
+    /**
+     * @param cards - the card ids.
+     * @return - the slots of the cards, as a bitmask (0 if any of the cards is not on the table).
+     */
+    private long slotsOf(int[] cards) {
+        long slots = 0;
+        for (int card : cards) {
+            int slot = table.cardToSlot[card];
+            if (slot == Table.EMPTY) return 0;
+            slots |= 1L << slot;
+        }
+        return slots;
     }
 
     /**
      * Called when the game should be terminated due to an external event.
      */
     public void terminate() {
-        // TODO implement
         terminate = true;
-        /* 
-        try{
-            playerThread.join();
-        }catch(InterruptedException e){}
-        */
+        if (aiTask != null) aiTask.cancel(true);
     }
 
     /**
@@ -189,37 +189,45 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-        // TODO implement
-        if(!(table.countCards()<12 && dealer.countDeck()>0) && (!point) && (!penalty)){
-            synchronized(actions){
-                actions.notifyAll();
-                if(actions.size() < 3) {
-                    if(!actions.contains(slot)) {
-                        if(table.slotToCard[slot]!=null){
-                            actions.add(slot);
-                            table.placeToken(id,slot);
-                            if(actions.size() == 3)
-                            {
-                                three_slots = true;
-                            }
-                        }
-                    }
-                    else {
-                        actions.remove(actions.indexOf(slot));
-                        table.removeToken(id,slot);
-                    }
-                }
-                else if(actions.size() == 3){
-                    
-                    if(actions.contains(slot)) {
-                        actions.remove(actions.indexOf(slot));
-                        table.removeToken(id, slot);
-                    }
-                }
+        // the player waits while the dealer refills an empty slot, for the verdict on its claim, and is frozen after it
+        if(!(table.freeSlots() != 0 && dealer.countDeck() > 0) && (!point) && (!penalty) && (!three_slots) && (!terminate)){
+            int setSize = env.config.featureSize;
+            long tokens = table.toggleToken(id, slot, setSize);
+            if(Long.bitCount(tokens) == setSize && (tokens & 1L << slot) != 0){
+                three_slots = true;
+                dealer.claim(id, Table.slots(tokens));
             }
         }
     }
 
+    /**
+     * Called by the dealer with its verdict on the player's claim: the player gets a point or a penalty, and may
+     * claim again once its freeze is over.
+     *
+     * @param isSet - true iff the claimed cards form a legal set.
+     */
+    public void verdict(boolean isSet) {
+        if (isSet) {
+            point = true;
+            point();
+        } else {
+            penalty = true;
+            penalty();
+        }
+        three_slots = false;
+        verdicts++;
+    }
+
+    /**
+     * Called by the dealer when the player's claim no longer stands: a card or a token of it left the table (taken by
+     * an earlier claim, or reshuffled) before the dealer got to it. The claim is dropped with no point or penalty, and
+     * the player may claim again.
+     */
+    public void claimDropped() {
+        three_slots = false;
+        verdicts++;
+    }
+
     /**
      * Award a point to a player and perform other related actions.
      *
@@ -227,51 +235,40 @@ public class Player implements Runnable {
      * @post - the player's score is updated in the ui.
      */
     public void point() {
-        // TODO implement
-
-        try {
-            long freezeTime = env.config.pointFreezeMillis - 1000;
-            //long timer = System.currentTimeMillis() + freezeTime; 
-            while(freezeTime >= 0){
-                env.ui.setFreeze(id, freezeTime + 1000);
-                Thread.sleep(1000);
-                freezeTime = freezeTime - 1000;
-                if(freezeTime == -1000)
-                    env.ui.setFreeze(id, 0);
-            }
-
-            point = false;
-        } catch (InterruptedException ignored) {}
-
-        //int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
+        freeze(env.config.pointFreezeMillis);
     }
 
     /**
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
-        // TODO implement
-       
-        try {
-            long freezeTime = env.config.penaltyFreezeMillis - 1000;
-            //long timer = System.currentTimeMillis() + freezeTime; 
-            
-            while(freezeTime >= 0){
-                env.ui.setFreeze(id, freezeTime + 1000);
-                Thread.sleep(1000);
-                freezeTime = freezeTime - 1000;
-                if(freezeTime == -1000)
-                    env.ui.setFreeze(id, 0);
-            }
-            
-            penalty = false;
-        } catch (InterruptedException ignored) {
+        freeze(env.config.penaltyFreezeMillis);
+    }
+
+    /**
+     * Freezes the player: its key presses are ignored until the freeze timer lifts the point/penalty flag.
+     *
+     * @param millis - the freeze time in milliseconds.
+     */
+    private void freeze(long millis) {
+        if (millis <= 0) {
+            unfreeze();
+            return;
         }
-           
+        FreezeTimer.freeze(env, id, millis, this::unfreeze);
+    }
+
+    private void unfreeze() {
+        point = false;
+        penalty = false;
     }
 
     public int score() {
         return score;
     }
+
+    public int verdicts() {
+        return verdicts;
+    }
 }
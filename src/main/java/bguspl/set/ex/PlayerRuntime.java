@@ -0,0 +1,128 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the players' repeating work (i.e. the computer players' key press simulators; human players are driven by
+ * the keyboard and by the dealer's verdicts, so they need no thread of their own).
+ * The runtime is chosen by the PlayerRuntime setting:
+ * Threads - a platform thread per computer player (the default).
+ * Pool    - scheduled tasks on a shared pool with a thread per processor, for thousands of players.
+ * Virtual - a virtual thread per computer player (requires Java 21 or later, otherwise falls back to Pool).
+ */
+public class PlayerRuntime {
+
+    /**
+     * The shared pool the tasks are scheduled on (null if every task gets a thread of its own).
+     */
+    private final ScheduledExecutorService pool;
+
+    /**
+     * Creates the threads of the tasks (when there is no pool).
+     */
+    private final ThreadFactory threads;
+
+    private PlayerRuntime(ScheduledExecutorService pool, ThreadFactory threads) {
+        this.pool = pool;
+        this.threads = threads;
+    }
+
+    /**
+     * Creates the runtime selected by the configuration.
+     *
+     * @param config - the game configuration.
+     * @param logger - the game logger.
+     * @return - the new runtime.
+     */
+    public static PlayerRuntime create(Config config, Logger logger) {
+        String kind = config.playerRuntime;
+        if (kind.equalsIgnoreCase("Virtual")) {
+            ThreadFactory virtual = virtualThreadFactory();
+            if (virtual != null) return new PlayerRuntime(null, virtual);
+            logger.severe("warning: virtual threads are not supported by this JVM, using a thread pool instead");
+            kind = "Pool";
+        }
+        if (kind.equalsIgnoreCase("Pool")) {
+            AtomicInteger count = new AtomicInteger();
+            ScheduledExecutorService pool = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+                Thread thread = new Thread(task, "player-pool-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            return new PlayerRuntime(pool, null);
+        }
+        if (!kind.equalsIgnoreCase("Threads"))
+            logger.severe("warning: unknown player runtime " + kind + ", using a thread per player instead");
+        return new PlayerRuntime(null, Thread::new);
+    }
+
+    /**
+     * @return - a factory of virtual threads (Thread.ofVirtual().factory()), or null if not supported.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs a task repeatedly, with the given delay between the end of one run and the start of the next.
+     * A run that throws is logged and the task keeps running (otherwise the player would silently stop playing).
+     *
+     * @param env    - the game environment object.
+     * @param name   - the name of the task (and of its thread, if it gets one).
+     * @param task   - the task to run.
+     * @param millis - the delay in milliseconds.
+     * @return - the future of the task, to cancel it with.
+     */
+    Future<?> repeat(Env env, String name, Runnable task, long millis) {
+        Runnable guarded = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                env.logger.log(Level.SEVERE, "task " + name + " failed: " + e, e);
+            }
+        };
+        if (pool != null) {
+            // the pool does not take a zero delay, a nanosecond is as good as none
+            long nanos = Math.max(TimeUnit.MILLISECONDS.toNanos(millis), 1);
+            return pool.scheduleWithFixedDelay(guarded, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+
+        FutureTask<?> loop = new FutureTask<>(() -> {
+            env.logger.log(Level.INFO, "Thread {0} starting.", Thread.currentThread().getName());
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(millis);
+                    guarded.run();
+                }
+            } catch (InterruptedException ignored) {}
+            env.logger.log(Level.INFO, "Thread {0} terminated.", Thread.currentThread().getName());
+        }, null);
+        Thread thread = threads.newThread(loop);
+        thread.setName(name);
+        thread.start();
+        return loop;
+    }
+
+    /**
+     * Stops the pool, if there is one (the tasks should be cancelled by their owners).
+     */
+    public void shutdown() {
+        if (pool != null) pool.shutdownNow();
+    }
+}
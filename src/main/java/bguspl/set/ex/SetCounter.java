@@ -0,0 +1,153 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.SetIndex;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps track of the legal sets that can be formed from a changing collection of cards (e.g. the cards on the table).
+ * Each set in the index has a counter of its cards that are present, so adding or removing a card only touches the
+ * sets that card belongs to, and the complete sets can be counted and returned without searching.
+ * If the deck is too large to be indexed, the sets are searched for, and the last set found is remembered until one
+ * of its cards is removed.
+ */
+class SetCounter {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The index of all the sets in the deck.
+     */
+    private final SetIndex index;
+
+    /**
+     * The number of present cards in each set, by set id.
+     */
+    private final int[] counters;
+
+    /**
+     * The ids of the complete sets (only the first 'complete' entries are used).
+     */
+    private final int[] completeSets;
+
+    /**
+     * The position of each complete set in completeSets, by set id.
+     */
+    private final int[] positions;
+
+    /**
+     * The number of complete sets.
+     */
+    private int complete;
+
+    /**
+     * The cards that are present, by card id.
+     */
+    private final boolean[] present;
+
+    /**
+     * A set that is known to be complete when the deck is not indexed (null if unknown).
+     */
+    private int[] witness;
+
+    /**
+     * @param env - the game environment object.
+     */
+    SetCounter(Env env) {
+        this.env = env;
+        this.index = env.setIndex;
+        counters = new int[index.size()];
+        completeSets = new int[index.size()];
+        positions = new int[index.size()];
+        present = new boolean[env.config.deckSize];
+    }
+
+    /**
+     * Adds a card to the collection.
+     *
+     * @param card - the card id.
+     */
+    synchronized void add(int card) {
+        if (present[card]) return;
+        present[card] = true;
+        for (int set : index.setsOf(card))
+            if (++counters[set] == index.setSize) {
+                positions[set] = complete;
+                completeSets[complete++] = set;
+            }
+    }
+
+    /**
+     * Removes a card from the collection.
+     *
+     * @param card - the card id.
+     */
+    synchronized void remove(int card) {
+        if (!present[card]) return;
+        present[card] = false;
+        for (int set : index.setsOf(card))
+            if (counters[set]-- == index.setSize) {
+                int last = completeSets[--complete];
+                completeSets[positions[set]] = last;
+                positions[last] = positions[set];
+            }
+        if (witness != null && IntStream.of(witness).anyMatch(c -> c == card))
+            witness = null;
+    }
+
+    /**
+     * @return - the number of complete sets.
+     */
+    synchronized int count() {
+        return index.isAvailable() ? complete : env.util.countSets(cards(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return - the card ids of one of the complete sets, or null if there are none.
+     */
+    synchronized int[] any() {
+        if (index.isAvailable())
+            return complete == 0 ? null : index.set(completeSets[0]).clone();
+        if (witness == null)
+            witness = env.util.streamSets(cards()).findFirst().orElse(null);
+        return witness == null ? null : witness.clone();
+    }
+
+    /**
+     * @param random - the random number generator to choose with.
+     * @return - the card ids of a complete set chosen at random, or null if there are none.
+     */
+    synchronized int[] any(Random random) {
+        if (!index.isAvailable()) {
+            List<int[]> sets = env.util.findSets(cards(), Integer.MAX_VALUE);
+            return sets.isEmpty() ? null : sets.get(random.nextInt(sets.size())).clone();
+        }
+        return complete == 0 ? null : index.set(completeSets[random.nextInt(complete)]).clone();
+    }
+
+    /**
+     * Performs the given action on each of the complete sets (without copying them).
+     *
+     * @param action - the action to perform on the card ids of each set. The arrays must not be modified.
+     */
+    synchronized void forEach(Consumer<int[]> action) {
+        if (!index.isAvailable()) {
+            env.util.streamSets(cards()).forEach(action);
+            return;
+        }
+        for (int i = 0; i < complete; ++i)
+            action.accept(index.set(completeSets[i]));
+    }
+
+    private List<Integer> cards() {
+        return IntStream.range(0, present.length).filter(card -> present[card]).boxed().collect(Collectors.toList());
+    }
+}
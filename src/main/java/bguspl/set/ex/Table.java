@@ -3,12 +3,20 @@ package bguspl.set.ex;
 import bguspl.set.Env;
 
 import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class contains the data that is visible to the player.
+ * Each slot has a lock of its own: a slot's card and the tokens on it only change while holding it, so a player
+ * placing a token on one slot never waits for a card being placed on (or removed from) another. The table delay
+ * (the card animation) is waited out before taking the lock. The batch operations (placeCards, removeCards) change
+ * all their slots at once and only then animate the change, in the background.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
  */
@@ -20,27 +28,88 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * Shows the cards placed and removed in batches after the table delay. A single thread keeps the updates in order.
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    private static final ScheduledExecutorService animator = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "table-animator");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * The value of an empty entry in slotToCard and cardToSlot.
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    public static final int EMPTY = -1;
+
+    /**
+     * Mapping between a slot and the card placed in it (EMPTY if none).
+     */
+    protected final int[] slotToCard; // card per slot (if any)
+
+    /**
+     * Mapping between a card and the slot it is in (EMPTY if none).
+     */
+    protected final int[] cardToSlot; // slot per card (if any)
+
+    /**
+     * The number of cards on the table.
+     */
+    private final AtomicInteger cards = new AtomicInteger();
+
+    /**
+     * The empty slots, as a bitmask (bit x is set iff slot x is empty; the table has at most
+     * {@link bguspl.set.Config#MAX_TABLE_SIZE} slots).
+     */
+    private final AtomicLong freeSlots = new AtomicLong();
+
+    /**
+     * The locks of the slots, by slot.
+     */
+    private final Object[] slotLocks;
+
+    /**
+     * The legal sets that can be formed from the cards on the table.
+     */
+    private final SetCounter sets;
+
+    /**
+     * The slots each player has tokens on, as a bitmask (bit x is set iff the player has a token on slot x), by
+     * player id. Bit x only changes while holding the lock of slot x.
+     */
+    private final AtomicLongArray tokens;
+
+    /**
+     * The players that have tokens on each slot, as a bitmask of player ids (in words of 64 players), by slot.
+     * Guarded by the lock of the slot.
+     *
+     * @inv (tokens[p] & 1L << x) != 0 iff (owners[x][p / 64] & 1L << p) != 0
+     */
+    private final long[][] owners;
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (EMPTY if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (EMPTY if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
+        this.sets = new SetCounter(env);
+        this.slotLocks = new Object[slotToCard.length];
+        for (int slot = 0; slot < slotToCard.length; ++slot) {
+            slotLocks[slot] = new Object();
+            if (slotToCard[slot] != EMPTY) {
+                sets.add(slotToCard[slot]);
+                cards.incrementAndGet();
+            } else
+                freeSlots.getAndAccumulate(1L << slot, (free, bit) -> free | bit);
+        }
+        this.tokens = new AtomicLongArray(env.config.players);
+        this.owners = new long[slotToCard.length][(env.config.players + Long.SIZE - 1) / Long.SIZE];
     }
 
     /**
@@ -50,33 +119,77 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, emptyArray(env.config.tableSize), emptyArray(env.config.deckSize));
+    }
+
+    /**
+     * @param length - the array length.
+     * @return       - a new array with all its entries EMPTY.
+     */
+    public static int[] emptyArray(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, EMPTY);
+        return array;
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
-            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+        StringBuilder sb = new StringBuilder();
+        int[] slots = new int[env.config.featureSize];
+        sets.forEach(set -> {
+            for (int i = 0; i < set.length; ++i)
+                slots[i] = cardToSlot[set[i]];
+            Arrays.sort(slots);
             int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
+            sb.setLength(0);
+            System.out.println(sb.append("Hint: Set found: slots: ").append(Arrays.toString(slots)).append(" features: ").append(Arrays.deepToString(features)));
         });
     }
 
+    /**
+     * Count the number of legal sets that can be formed from the cards currently on the table.
+     *
+     * @return - the number of sets on the table.
+     */
+    public int countSets() {
+        return sets.count();
+    }
+
+    /**
+     * Finds a legal set among the cards currently on the table.
+     *
+     * @return - the card ids of a set on the table, or null if there is none.
+     */
+    public int[] findSet() {
+        return sets.any();
+    }
+
+    /**
+     * Finds a legal set among the cards currently on the table, chosen at random among all the sets on the table.
+     *
+     * @param random - the random number generator to choose with.
+     * @return - the card ids of a set on the table, or null if there is none.
+     */
+    public int[] findSet(Random random) {
+        return sets.any(random);
+    }
+
     /**
      * Count the number of cards currently on the table.
      *
      * @return - the number of cards on the table.
      */
     public int countCards() {
-        int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
-                ++cards;
-        return cards;
+        return cards.get();
+    }
+
+    /**
+     * @return - the empty slots, as a bitmask (bit x is set iff slot x is empty).
+     */
+    public long freeSlots() {
+        return freeSlots.get();
     }
 
     /**
@@ -91,39 +204,149 @@ public class Table {
             Thread.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+        synchronized (slotLocks[slot]) {
+            setCard(card, slot);
 
-        // TODO implement
-        //update ui, reset countdown
-        env.ui.placeCard(card, slot);
+            //update ui, reset countdown
+            env.ui.placeCard(card, slot);
+        }
     }
 
     /**
-     * Removes a card from a grid slot on the table.
+     * Removes a card from a grid slot on the table (and the tokens on it).
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
         try {
             Thread.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
-        
-        // TODO implement
-        cardToSlot[slotToCard[slot]] = null;
-        slotToCard[slot] = null;
-        env.ui.removeCard(slot);
-        
+
+        synchronized (slotLocks[slot]) {
+            if (clearCard(slot) != EMPTY)
+                env.ui.removeCard(slot);
+        }
     }
 
     /**
-     * Places a player token on a grid slot.
+     * Places cards on the table, in grid slots. All the cards are on the table when the method returns, and they are
+     * shown on the ui together, once the table delay is over.
+     * @param cards - the card ids to place.
+     * @param slots - the slots in which the cards should be placed (slots[i] for cards[i]).
+     *
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        env.ui.prepareCards(cards);
+        withSlotsLocked(sorted(slots), 0, () -> {
+            for (int i = 0; i < slots.length; ++i)
+                setCard(cards[i], slots[i]);
+        });
+        animate(() -> {
+            for (int i = 0; i < slots.length; ++i)
+                env.ui.placeCard(cards[i], slots[i]);
+        });
+    }
+
+    /**
+     * Removes the cards (and the tokens) from grid slots on the table. The cards are off the table when the method
+     * returns, and they are removed from the ui together, once the table delay is over.
+     * @param slots - the slots from which to remove the cards.
+     * @return      - the removed card ids (removed[i] from slots[i], EMPTY if there was none).
+     */
+    public int[] removeCards(int[] slots) {
+        int[] removed = new int[slots.length];
+        withSlotsLocked(sorted(slots), 0, () -> {
+            for (int i = 0; i < slots.length; ++i)
+                removed[i] = clearCard(slots[i]);
+        });
+        animate(() -> {
+            for (int i = 0; i < slots.length; ++i)
+                if (removed[i] != EMPTY)
+                    env.ui.removeCard(slots[i]);
+        });
+        return removed;
+    }
+
+    /**
+     * Puts a card in a slot (replacing the card in it, if any). The caller must hold the lock of the slot.
+     */
+    private void setCard(int card, int slot) {
+        int replaced = slotToCard[slot];
+        if (replaced != EMPTY) {
+            if (clearTokens(slot))
+                env.ui.removeTokens(slot);
+            sets.remove(replaced);
+            cardToSlot[replaced] = EMPTY;
+        } else {
+            cards.incrementAndGet();
+            freeSlots.getAndAccumulate(~(1L << slot), (free, mask) -> free & mask);
+        }
+        cardToSlot[card] = slot;
+        slotToCard[slot] = card;
+        sets.add(card);
+    }
+
+    /**
+     * Takes the card (and the tokens) out of a slot. The caller must hold the lock of the slot.
+     *
+     * @return - the card id, or EMPTY if the slot was empty.
+     */
+    private int clearCard(int slot) {
+        int card = slotToCard[slot];
+        if (card == EMPTY)
+            return EMPTY;
+        if (clearTokens(slot))
+            env.ui.removeTokens(slot);
+        sets.remove(card);
+        cardToSlot[card] = EMPTY;
+        slotToCard[slot] = EMPTY;
+        cards.decrementAndGet();
+        freeSlots.getAndAccumulate(1L << slot, (free, bit) -> free | bit);
+        return card;
+    }
+
+    /**
+     * Runs an action while holding the locks of the given slots (taken in ascending order, so batches never deadlock).
+     * @param slots  - the slots to lock, sorted.
+     * @param from   - the index of the first slot that is not locked yet.
+     * @param action - the action to run.
+     */
+    private void withSlotsLocked(int[] slots, int from, Runnable action) {
+        if (from == slots.length) {
+            action.run();
+            return;
+        }
+        synchronized (slotLocks[slots[from]]) {
+            withSlotsLocked(slots, from + 1, action);
+        }
+    }
+
+    private static int[] sorted(int[] slots) {
+        int[] sorted = slots.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Runs a ui update once the table delay is over, without waiting for it.
+     * @param update - the ui update.
+     */
+    private void animate(Runnable update) {
+        if (env.config.tableDelayMillis > 0)
+            animator.schedule(update, env.config.tableDelayMillis, TimeUnit.MILLISECONDS);
+        else
+            update.run();
+    }
+
+    /**
+     * Places a player token on a grid slot (if there is a card in it).
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
-        // TODO implement
-        if(slotToCard[slot] !=null)
-            env.ui.placeToken(player, slot);
+        synchronized (slotLocks[slot]) {
+            addToken(player, slot, Integer.MAX_VALUE);
+        }
     }
 
     /**
@@ -133,8 +356,121 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        // TODO implement
-        env.ui.removeToken(player, slot);
-        return true;
+        synchronized (slotLocks[slot]) {
+            if ((tokens.get(player) & 1L << slot) == 0)
+                return false;
+            tokens.getAndAccumulate(player, ~(1L << slot), (mask, keep) -> mask & keep);
+            owners[slot][player / Long.SIZE] &= ~(1L << player);
+            env.ui.removeToken(player, slot);
+            return true;
+        }
+    }
+
+    /**
+     * Places a player token on a grid slot, or removes it if the player already has a token there. A token is only
+     * placed if there is a card in the slot and the player has less than the given number of tokens.
+     * @param player    - the player the token belongs to.
+     * @param slot      - the slot to toggle the token on.
+     * @param maxTokens - the maximum number of tokens the player may have.
+     * @return          - the slots the player has tokens on after the toggle, as a bitmask.
+     */
+    public long toggleToken(int player, int slot, int maxTokens) {
+        synchronized (slotLocks[slot]) {
+            if (!removeToken(player, slot))
+                addToken(player, slot, maxTokens);
+            return tokens.get(player);
+        }
+    }
+
+    /**
+     * Adds a player token to a slot, if there is a card in it and the player has less than the given number of
+     * tokens. The caller must hold the lock of the slot.
+     */
+    private void addToken(int player, int slot, int maxTokens) {
+        if (slotToCard[slot] == EMPTY)
+            return;
+        long mask;
+        do { // other slots' tokens of the player may change concurrently
+            mask = tokens.get(player);
+            if ((mask & 1L << slot) != 0 || Long.bitCount(mask) >= maxTokens)
+                return;
+        } while (!tokens.compareAndSet(player, mask, mask | 1L << slot));
+        owners[slot][player / Long.SIZE] |= 1L << player;
+        env.ui.placeToken(player, slot);
+    }
+
+    /**
+     * Removes the tokens of all the players from a slot (without updating the ui). The caller must hold the lock of
+     * the slot.
+     *
+     * @return - true iff there were tokens on the slot.
+     */
+    private boolean clearTokens(int slot) {
+        boolean cleared = false;
+        long[] slotOwners = owners[slot];
+        for (int word = 0; word < slotOwners.length; ++word) {
+            for (long bits = slotOwners[word]; bits != 0; bits &= bits - 1)
+                tokens.getAndAccumulate(word * Long.SIZE + Long.numberOfTrailingZeros(bits), ~(1L << slot), (mask, keep) -> mask & keep);
+            cleared |= slotOwners[word] != 0;
+            slotOwners[word] = 0;
+        }
+        return cleared;
+    }
+
+    /**
+     * Removes the tokens of all the players from a grid slot.
+     * @param slot - the slot from which to remove the tokens.
+     */
+    public void removeTokens(int slot) {
+        synchronized (slotLocks[slot]) {
+            clearTokens(slot);
+            env.ui.removeTokens(slot);
+        }
+    }
+
+    /**
+     * Removes all the tokens from the table.
+     */
+    public void removeAllTokens() {
+        for (int slot = 0; slot < slotLocks.length; ++slot)
+            synchronized (slotLocks[slot]) {
+                clearTokens(slot);
+            }
+        env.ui.removeTokens();
+    }
+
+    /**
+     * @param player - the player id.
+     * @return       - the slots the player has tokens on, as a bitmask (bit x is set iff there is a token on slot x).
+     */
+    public long tokens(int player) {
+        return tokens.get(player);
+    }
+    /**
+     * @param player - the player id.
+     * @return       - the number of tokens the player has on the table.
+     */
+    public int countTokens(int player) {
+        return Long.bitCount(tokens(player));
+    }
+
+    /**
+     * @param player - the player id.
+     * @param slot   - the slot.
+     * @return       - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (tokens(player) & 1L << slot) != 0;
+    }
+
+    /**
+     * @param mask - a bitmask of slots.
+     * @return     - the slots in the mask, in ascending order.
+     */
+    public static int[] slots(long mask) {
+        int[] slots = new int[Long.bitCount(mask)];
+        for (int i = 0; mask != 0; mask &= mask - 1)
+            slots[i++] = Long.numberOfTrailingZeros(mask);
+        return slots;
     }
 }
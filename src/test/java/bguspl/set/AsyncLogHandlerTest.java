@@ -0,0 +1,102 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncLogHandlerTest {
+
+    private ByteArrayOutputStream out;
+    private AsyncLogHandler handler;
+    private Logger logger;
+
+    @BeforeEach
+    void setUp() {
+        out = new ByteArrayOutputStream();
+        handler = new AsyncLogHandler(out, 1 << 16);
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        Main.setLoggerLevelAndFormat(logger, Level.ALL, "[%2$s] %3$s%n");
+    }
+
+    @AfterEach
+    void tearDown() {
+        handler.close();
+    }
+
+    private String[] lines() {
+        handler.flush();
+        synchronized (out) {
+            return new String(out.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator());
+        }
+    }
+
+    @Test
+    void publish_FormatsParametersOnTheWriter() {
+        logger.log(Level.SEVERE, "player {0,number,#} placing token on slot {1,number,#}", new Object[]{1, 5});
+        logger.log(Level.SEVERE, "updating countdown to {0,number,#}", 60000L);
+        logger.info("no parameters");
+
+        String[] lines = lines();
+        assertEquals("[SEVERE] player 1 placing token on slot 5", lines[0]);
+        assertEquals("[SEVERE] updating countdown to 60000", lines[1]);
+        assertEquals("[INFO] no parameters", lines[2]);
+    }
+
+    @Test
+    @Timeout(10)
+    void publish_ConcurrentThreadsLoseNothing() throws InterruptedException {
+        int threads = 4;
+        int records = 10000;
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < records; ++i)
+                    logger.log(Level.INFO, "record {0,number,#}", i);
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        String[] lines = lines();
+        assertEquals(threads * records, lines.length);
+        for (String line : lines)
+            assertTrue(line.startsWith("[INFO] record "));
+    }
+
+    @Test
+    @Timeout(10)
+    void close_WritesEverythingPublished() {
+        int records = 10000;
+        for (int i = 0; i < records; ++i)
+            logger.log(Level.INFO, "record {0,number,#}", i);
+        handler.close();
+
+        String[] lines = lines();
+        assertEquals(records, lines.length);
+        assertEquals("[INFO] record " + (records - 1), lines[records - 1]);
+    }
+
+    @Test
+    @Timeout(10)
+    void publish_WakesTheIdleWriter() throws InterruptedException {
+        for (int i = 0; i < 3; ++i) {
+            Thread.sleep(50); // the writer is asleep by now
+            logger.info("after a pause " + i);
+        }
+        String[] lines = lines();
+        assertEquals(3, lines.length);
+        assertEquals("[INFO] after a pause 2", lines[2]);
+    }
+}
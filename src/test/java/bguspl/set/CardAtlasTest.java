@@ -0,0 +1,59 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class CardAtlasTest {
+
+    @Mock
+    private Logger logger;
+
+    private Config config;
+
+    @BeforeEach
+    void setUp() {
+        // purposely do not find the configuration files (use defaults here).
+        config = new Config(logger, "");
+    }
+
+    @Test
+    void load_BuildsAndSavesTheAtlasOnce(@TempDir File directory) throws IOException {
+        File file = new File(directory, "cards.png");
+        CardAtlas built = CardAtlas.load(config, file, logger);
+        assertTrue(file.isFile());
+        long modified = file.lastModified();
+
+        // the second load reads the saved atlas
+        CardAtlas read = CardAtlas.load(config, file, logger);
+        assertEquals(modified, file.lastModified());
+        assertEquals(built.bounds(80), read.bounds(80));
+
+        BufferedImage card = ImageIO.read(getClass().getClassLoader().getResource(CardImageCache.resourceName(config, 80)));
+        Rectangle bounds = read.bounds(80);
+        assertEquals(card.getWidth(), bounds.width);
+        assertEquals(card.getHeight(), bounds.height);
+    }
+
+    @Test
+    void bounds_CardsDoNotOverlap(@TempDir File directory) {
+        CardAtlas atlas = CardAtlas.load(config, new File(directory, "cards.png"), logger);
+        for (int card = -1; card < config.deckSize; ++card)
+            for (int other = card + 1; other < config.deckSize; ++other)
+                assertTrue(!atlas.bounds(card).intersects(atlas.bounds(other)));
+    }
+}
@@ -0,0 +1,78 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.awt.Image;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@ExtendWith(MockitoExtension.class)
+class CardImageCacheTest {
+
+    @Mock
+    private Logger logger;
+
+    private Config config;
+
+    @BeforeEach
+    void setUp() {
+        // purposely do not find the configuration files (use defaults here).
+        config = new Config(logger, "");
+    }
+
+    @Test
+    void resourceName_FeaturesInBase() {
+        assertEquals("cards/0000.png", CardImageCache.resourceName(config, 0));
+        assertEquals("cards/0012.png", CardImageCache.resourceName(config, 5));
+        assertEquals("cards/2222.png", CardImageCache.resourceName(config, 80));
+    }
+
+    @Test
+    void get_LoadsLazilyAndEvictsLeastRecentlyUsed() {
+        CardImageCache cache = new CardImageCache(config, 2);
+        assertEquals(0, cache.size());
+
+        Image first = cache.get(0);
+        assertNotNull(first);
+        assertSame(first, cache.get(0));
+        cache.get(1);
+        cache.get(0); // card 1 is now the least recently used
+        cache.get(2);
+
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get(0));
+    }
+
+    @Test
+    @Timeout(10)
+    void prefetch_LoadsInTheBackground() throws InterruptedException {
+        CardImageCache cache = new CardImageCache(config, 8);
+        cache.prefetch(new int[]{3, 4, 5});
+        while (cache.size() < 3)
+            Thread.sleep(10);
+        assertNotNull(cache.get(4));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    @Timeout(10)
+    void get_DoesNotWaitForAMiss() throws InterruptedException {
+        CardImageCache cache = new CardImageCache(config, 8);
+        CountDownLatch loaded = new CountDownLatch(1);
+
+        assertNull(cache.get(7, loaded::countDown));
+        loaded.await();
+        assertNotNull(cache.get(7, () -> fail("the image is in the cache")));
+    }
+}
@@ -0,0 +1,52 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class GameHostTest {
+
+    @Mock
+    private Logger logger;
+
+    @Test
+    @Timeout(30)
+    void start_ConcurrentGamesShareTheSetEngine() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", "2");
+        properties.setProperty("PlayerRuntime", "Pool");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("PointFreezeSeconds", "0");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+        properties.setProperty("ComputerDelaySeconds", "0");
+        properties.setProperty("ComputerReactionSeconds", "0");
+        properties.setProperty("TurnTimeoutSeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("Hints", "False");
+        GameHost host = new GameHost(logger, new Config(logger, properties));
+
+        GameHost.Game[] games = new GameHost.Game[4];
+        for (int i = 0; i < games.length; ++i)
+            games[i] = host.start("dealer-" + i);
+        for (GameHost.Game game : games)
+            game.join();
+        host.shutdown();
+
+        for (GameHost.Game game : games) {
+            assertSame(games[0].env.setIndex, game.env.setIndex);
+            assertTrue(game.dealer.setsTaken() > 0);
+        }
+        assertNotSame(games[0].table, games[1].table);
+    }
+}
@@ -0,0 +1,40 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class SimulationTest {
+
+    @Mock
+    private Logger logger;
+
+    @Test
+    @Timeout(30)
+    void run_CompleteGamesWithoutDelays() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "1");
+        properties.setProperty("ComputerPlayers", "2");
+        properties.setProperty("PlayerRuntime", "Pool");
+        properties.setProperty("SimulationTimeScale", "0");
+
+        // the games end (the deck runs out of sets) although the configured delays would take minutes
+        Simulation simulation = new Simulation(logger, properties);
+        simulation.run(3);
+
+        assertEquals(3, simulation.gamesPlayed());
+        // no game of a full deck ends before a set is taken (at most 20 cards have no set among them)
+        assertTrue(simulation.setsTaken() >= 3);
+        // every set taken was claimed (and ruled on)
+        assertTrue(simulation.verdictStatistics().getCount() >= simulation.setsTaken());
+    }
+}
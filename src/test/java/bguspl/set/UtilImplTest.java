@@ -0,0 +1,211 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class UtilImplTest {
+
+    Util util;
+    Config config;
+
+    @Mock
+    private Logger logger;
+
+    @BeforeEach
+    void setUp() {
+        // purposely do not find the configuration files (use defaults here).
+        config = new Config(logger, (String) null);
+        util = new UtilImpl(config);
+    }
+
+    private Util utilWithFeatures(int featureCount, int featureSize) {
+        return utilWithFeatures(featureCount, featureSize, false);
+    }
+
+    private Util utilWithFeatures(int featureCount, int featureSize, boolean parallel) {
+        Properties properties = new Properties();
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+        properties.setProperty("FeatureSize", Integer.toString(featureSize));
+        properties.setProperty("ParallelFindSets", Boolean.toString(parallel));
+        return new UtilImpl(new Config(logger, properties));
+    }
+
+    private static List<Integer> allCards(int deckSize) {
+        return IntStream.range(0, deckSize).boxed().collect(Collectors.toList());
+    }
+
+    private static Set<String> asStrings(List<int[]> sets) {
+        return sets.stream().map(set -> {
+            int[] sorted = set.clone();
+            Arrays.sort(sorted);
+            return Arrays.toString(sorted);
+        }).collect(Collectors.toSet());
+    }
+
+    /**
+     * Counts the sets in the deck by testing every triple (the reference for the standard 3-card sets).
+     */
+    private static int countTriples(Util util, List<Integer> deck) {
+        int sets = 0;
+        for (int i = 0; i < deck.size(); ++i)
+            for (int j = i + 1; j < deck.size(); ++j)
+                for (int k = j + 1; k < deck.size(); ++k)
+                    if (util.testSet(new int[]{deck.get(i), deck.get(j), deck.get(k)}))
+                        ++sets;
+        return sets;
+    }
+
+    @Test
+    void findSets_FullDeck() {
+        List<int[]> sets = util.findSets(allCards(config.deckSize), Integer.MAX_VALUE);
+
+        // 81 * 80 / 6 sets in the standard deck, all of them legal and distinct
+        assertEquals(1080, sets.size());
+        assertEquals(1080, asStrings(sets).size());
+        sets.forEach(set -> assertTrue(util.testSet(set)));
+    }
+
+    @Test
+    void findSets_MatchesTripleScan() {
+        List<Integer> deck = allCards(config.deckSize);
+        Collections.shuffle(deck, new java.util.Random(7));
+        List<Integer> part = deck.subList(0, 20);
+
+        assertEquals(countTriples(util, part), util.findSets(part, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void findSets_StopsAtCount() {
+        assertEquals(1, util.findSets(allCards(config.deckSize), 1).size());
+        assertEquals(5, util.findSets(allCards(config.deckSize), 5).size());
+    }
+
+    @Test
+    void findSets_NoSets() {
+        // a cap set of 4 cards: 0000, 0001, 0010, 0011 (0002 would complete 0000 and 0001)
+        List<Integer> deck = Arrays.asList(0, 1, 3, 4);
+        assertTrue(util.findSets(deck, Integer.MAX_VALUE).isEmpty());
+        assertTrue(util.findSets(Collections.emptyList(), 1).isEmpty());
+    }
+
+    @Test
+    void findSets_LargerFeatureSize() {
+        Util fours = utilWithFeatures(2, 4);
+        List<int[]> sets = fours.findSets(allCards(16), Integer.MAX_VALUE);
+
+        // 4 rows, 4 columns and 4! "diagonals" of 4 cards each
+        assertEquals(32, sets.size());
+        sets.forEach(set -> {
+            assertEquals(4, set.length);
+            assertTrue(fours.testSet(set));
+        });
+    }
+
+    @Test
+    void findSets_FeaturesDoNotFitInALong() {
+        // 2 x 33 bits: the features are compared one by one
+        Util wide = utilWithFeatures(2, 33);
+        int[] row = IntStream.range(0, 33).toArray();
+        int[] diagonal = IntStream.range(0, 33).map(i -> i * 34).toArray();
+        assertTrue(wide.testSet(row));
+        assertTrue(wide.testSet(diagonal));
+        row[32] = 33;
+        assertFalse(wide.testSet(row));
+
+        // the first set of the deck is completed from the first 32 cards (the sets are too large to search further)
+        List<int[]> sets = wide.findSets(allCards(33 * 33), 1);
+        assertEquals(1, sets.size());
+        assertArrayEquals(IntStream.range(0, 33).toArray(), sets.get(0));
+    }
+
+    @Test
+    void findSets_Parallel() {
+        List<Integer> deck = allCards(243);
+        Set<String> expected = asStrings(utilWithFeatures(5, 3).findSets(deck, Integer.MAX_VALUE));
+        Util parallel = utilWithFeatures(5, 3, true);
+
+        // 243 * 242 / 6 sets, the same ones found sequentially
+        assertEquals(9801, expected.size());
+        assertEquals(expected, asStrings(parallel.findSets(deck, Integer.MAX_VALUE)));
+
+        // the search is cancelled once enough sets are found
+        List<int[]> some = parallel.findSets(deck, 10);
+        assertEquals(10, some.size());
+        some.forEach(set -> assertTrue(expected.contains(Arrays.toString(set))));
+    }
+
+    @Test
+    void streamSets_Lazy() {
+        List<Integer> deck = allCards(config.deckSize);
+        Set<String> expected = asStrings(util.findSets(deck, Integer.MAX_VALUE));
+
+        assertEquals(expected, asStrings(util.streamSets(deck).collect(Collectors.toList())));
+        assertEquals(expected, asStrings(util.streamSets(deck).parallel().collect(Collectors.toList())));
+        assertEquals(3, util.streamSets(deck).limit(3).count());
+        assertFalse(util.streamSets(Arrays.asList(0, 1, 3, 4)).findFirst().isPresent());
+    }
+
+    @Test
+    void countSets() {
+        List<Integer> deck = allCards(config.deckSize);
+        assertEquals(1080, util.countSets(deck, Integer.MAX_VALUE));
+        assertEquals(7, util.countSets(deck, 7));
+        assertEquals(1, util.countSets(Arrays.asList(0, 1, 2, 3), Integer.MAX_VALUE));
+    }
+
+    @Test
+    void testSet() {
+        assertTrue(util.testSet(new int[]{0, 1, 2}));
+        assertTrue(util.testSet(new int[]{0, 40, 80}));
+        assertFalse(util.testSet(new int[]{0, 1, 3}));
+    }
+
+    @Test
+    void testSet_SameAsFeatureComparison() {
+        for (int a = 0; a < config.deckSize; a += 7)
+            for (int b = 0; b < config.deckSize; ++b)
+                for (int c = 0; c < config.deckSize; c += 5) {
+                    int[][] features = util.cardsToFeatures(new int[]{a, b, c});
+                    boolean expected = true;
+                    for (int i = 0; i < config.featureCount; ++i) {
+                        int x = features[0][i], y = features[1][i], z = features[2][i];
+                        boolean sameSame = x == y && y == z;
+                        boolean butDifferent = x != y && y != z && x != z;
+                        if (sameSame == butDifferent) expected = false;
+                    }
+                    assertEquals(expected, util.testSet(new int[]{a, b, c}));
+                }
+
+        assertFalse(util.testSet(new int[]{5}));
+        assertFalse(util.testSet(new int[0]));
+    }
+
+    @Test
+    void cardToFeatures() {
+        assertArrayEquals(new int[]{0, 0, 0, 0}, util.cardToFeatures(0));
+        assertArrayEquals(new int[]{1, 2, 0, 1}, util.cardToFeatures(27 + 18 + 1));
+        assertArrayEquals(new int[]{2, 2, 2, 2}, util.cardToFeatures(80));
+
+        // the returned arrays are copies, modifying them does not affect the next call
+        util.cardToFeatures(80)[0] = 0;
+        assertArrayEquals(new int[][]{{2, 2, 2, 2}, {0, 0, 0, 1}}, util.cardsToFeatures(new int[]{80, 1}));
+    }
+}
@@ -13,12 +13,18 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,8 +41,8 @@ class DealerTest {
 
     private Table table;
 
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     @Mock
     private Logger logger;
@@ -64,8 +70,8 @@ class DealerTest {
     @BeforeEach
     void setUp() {
         players = new Player[2];
-        slotToCard = new Integer[12];
-        cardToSlot = new Integer[81];
+        slotToCard = Table.emptyArray(12);
+        cardToSlot = Table.emptyArray(81);
         // purposely do not find the configuration files (use defaults here).
         Env env = new Env(logger, new Config(logger, (String) null), ui, util);
         createMockPlayers(env);
@@ -93,20 +99,86 @@ class DealerTest {
         for(int i = 0; i < 12; i++)
         {
             // check that the cards in table removed successfully
-            assertNull(table.slotToCard[i]);
+            assertEquals(Table.EMPTY, table.slotToCard[i]);
         }
         
         for(int i=0; i<80; i++){
-            assertNull(table.cardToSlot[i]);
+            assertEquals(Table.EMPTY, table.cardToSlot[i]);
         }
 
-        // check that ui.removeCard was called for each slot
+        // check that ui.removeCard was called for each slot (after the table delay)
         for(int i = 0; i < 12; i++)
         {
-            verify(ui).removeCard(eq(i));
+            verify(ui, timeout(1000)).removeCard(eq(i));
         }
     }
 
+    @Test
+    void placeCardsOnTable_SeededDeckIsRepeatable() {
+        Properties properties = new Properties();
+        properties.setProperty("DeckSeed", "42");
+        properties.setProperty("TableDelaySeconds", "0");
+        Env env = new Env(logger, new Config(logger, properties), ui, util);
+
+        int[][] dealt = new int[2][];
+        for (int i = 0; i < dealt.length; ++i) {
+            Table seeded = new Table(env);
+            Dealer seededDealer = new Dealer(env, seeded, players);
+            seededDealer.placeCardsOnTableForTest();
+            assertEquals(81 - 12, seededDealer.countDeck());
+            dealt[i] = seeded.slotToCard.clone();
+        }
+
+        // the same seed deals the same 12 (distinct) cards
+        assertArrayEquals(dealt[0], dealt[1]);
+        assertEquals(12, IntStream.of(dealt[0]).distinct().filter(card -> card != Table.EMPTY).count());
+    }
+
+    @Test
+    void removeCardsFromTable_LaterOverlappingClaimIsDropped() {
+        table.placeCards(new int[]{0, 1, 2, 3}, new int[]{0, 1, 2, 3});
+        for (int slot = 0; slot < 3; ++slot)
+            table.placeToken(0, slot);
+        for (int slot = 1; slot < 4; ++slot)
+            table.placeToken(1, slot);
+        when(util.testSet(any())).thenReturn(true);
+
+        // both claims are legal sets when made, but the first one takes cards of the second
+        players[0].three_slots = true;
+        dealer.claim(0, new int[]{0, 1, 2});
+        players[1].three_slots = true;
+        dealer.claim(1, new int[]{1, 2, 3});
+        dealer.removeCardsFromTableForTest();
+
+        // the first claim scores, the second is dropped: no point and no penalty
+        assertEquals(3, players[0].score());
+        assertEquals(1, players[1].score());
+        assertFalse(players[1].penalty);
+        assertFalse(players[1].three_slots);
+        assertEquals(1, players[1].verdicts());
+        verify(util).testSet(any());
+        assertEquals(Table.EMPTY, table.slotToCard[1]);
+        assertEquals(3, table.slotToCard[3]);
+    }
+
+    @Test
+    void removeAllCardsFromTable_DropsPendingClaims() {
+        dealer.placeCardsOnTableForTest();
+        for (int slot = 0; slot < 3; ++slot)
+            table.placeToken(1, slot);
+        players[1].three_slots = true;
+        dealer.claim(1, new int[]{0, 1, 2});
+
+        // the cards are reshuffled into the deck before the dealer gets to the claim
+        dealer.removeAllCardsFromTableForTest();
+        dealer.removeCardsFromTableForTest();
+
+        assertFalse(players[1].three_slots);
+        assertFalse(players[1].penalty);
+        assertEquals(1, players[1].verdicts());
+        verify(util, never()).testSet(any());
+    }
+
     @Test
     void announceWinners(){
 
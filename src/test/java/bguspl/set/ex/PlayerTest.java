@@ -4,19 +4,33 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -31,8 +45,8 @@ class PlayerTest {
     
     private Table table;
 
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     @Mock
     private Dealer dealer;
@@ -46,8 +60,8 @@ class PlayerTest {
 
     @BeforeEach
     void setUp() {
-        slotToCard = new Integer[12];
-        cardToSlot = new Integer[81];
+        slotToCard = Table.emptyArray(12);
+        cardToSlot = Table.emptyArray(81);
         fillAllSlots();
         // purposely do not find the configuration files (use defaults here).
         Env env = new Env(logger, new Config(logger, ""), ui, util);
@@ -96,6 +110,46 @@ class PlayerTest {
         assertEquals(expectedScore, player.score());
     }
     
+    @Test
+    void penalty_SubSecondFreeze() {
+        Properties properties = new Properties();
+        properties.setProperty("PenaltyFreezeSeconds", "0.3");
+        Env env = new Env(logger, new Config(logger, properties), ui, util);
+        player = new Player(env, dealer, table, 0, false);
+
+        player.verdict(false);
+
+        // the player is frozen, its key presses are ignored
+        verify(ui).setFreeze(eq(player.id), eq(1000L));
+        player.keyPressed(0);
+        assertEquals(0, table.countTokens(player.id));
+
+        // the freeze is lifted by the timer after 0.3 seconds
+        verify(ui, timeout(2000)).setFreeze(eq(player.id), eq(0L));
+        assertFalse(player.penalty);
+        player.keyPressed(0);
+        assertEquals(1, table.countTokens(player.id));
+    }
+
+    @Test
+    void simulateKeyPress_ClaimsSetOnTable() {
+        Properties properties = new Properties();
+        properties.setProperty("ComputerReactionSeconds", "0");
+        Config config = new Config(logger, properties);
+        Util realUtil = new UtilImpl(config);
+        Env env = new Env(logger, config, ui, realUtil);
+        table = new Table(env, slotToCard, cardToSlot);
+        player = new Player(env, dealer, table, 0, false);
+
+        // the first step finds a set, the next ones press its keys
+        for (int i = 0; i <= config.featureSize; ++i)
+            player.simulateKeyPress();
+
+        ArgumentCaptor<int[]> claim = ArgumentCaptor.forClass(int[].class);
+        verify(dealer).claim(eq(player.id), claim.capture());
+        assertTrue(realUtil.testSet(Arrays.stream(claim.getValue()).map(slot -> slotToCard[slot]).toArray()));
+    }
+
     @Test
     void keyPressed_addSlot(){
        
@@ -105,19 +159,25 @@ class PlayerTest {
             // call the method we are testing
             player.keyPressed(slot);
 
-            // check that the slot added to the actions list
-            assertEquals(slot, player.actions.get(i));
+            // check that a token was placed on the slot
+            assertTrue(table.hasToken(player.id, slot));
+            assertEquals(i + 1, table.countTokens(player.id));
 
             // check that ui.placeToken was called with the player's id and the correct slot
             verify(ui).placeToken(eq(player.id), eq(slot));
         }
+
+        // the third token makes a claim, and the player waits for the dealer's verdict
+        verify(dealer).claim(eq(player.id), aryEq(new int[]{0, 1, 2}));
+        player.keyPressed(0);
+        assertEquals(0b111, table.tokens(player.id));
     }
 
     @Test
     void keyPressed_removeSlot(){
        
         for(int i=0; i<3; i++){
-            player.actions.add(i);
+            table.placeToken(player.id, i);
         }
 
         for(int i=0; i<3; i++){
@@ -126,12 +186,37 @@ class PlayerTest {
             // call the method we are testing
             player.keyPressed(slot);
           
-            // check that the slot revmoved from the actions list
-            assertEquals(3-i-1, player.actions.size());
+            // check that the token was removed from the slot
+            assertFalse(table.hasToken(player.id, slot));
+            assertEquals(3-i-1, table.countTokens(player.id));
 
             // check that ui.removeToken was called with the player's id and the correct slot
             verify(ui).removeToken(eq(player.id), eq(slot));
         }
     }
 
+
+    @Test
+    void repeat_KeepsRunningAfterAFailure() throws InterruptedException {
+        for (String kind : new String[]{"Threads", "Pool"}) {
+            Properties properties = new Properties();
+            properties.setProperty("PlayerRuntime", kind);
+            Env env = new Env(logger, new Config(logger, properties), ui, util);
+            PlayerRuntime runtime = PlayerRuntime.create(env.config, logger);
+            AtomicInteger runs = new AtomicInteger();
+            CountDownLatch again = new CountDownLatch(1);
+            Future<?> task = runtime.repeat(env, "failing-" + kind, () -> {
+                if (runs.incrementAndGet() == 1) throw new IllegalStateException("first run");
+                again.countDown();
+            }, 1);
+            try {
+                assertTrue(again.await(5, TimeUnit.SECONDS), kind);
+                verify(logger).log(eq(Level.SEVERE), anyString(), any(IllegalStateException.class));
+            } finally {
+                task.cancel(true);
+                runtime.shutdown();
+            }
+            clearInvocations(logger);
+        }
+    }
 }
\ No newline at end of file
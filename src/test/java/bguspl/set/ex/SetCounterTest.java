@@ -0,0 +1,76 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterface;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class SetCounterTest {
+
+    @Mock
+    private UserInterface ui;
+    @Mock
+    private Logger logger;
+
+    private Env env(int featureCount, int featureSize) {
+        Properties properties = new Properties();
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+        properties.setProperty("FeatureSize", Integer.toString(featureSize));
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, ui, new UtilImpl(config));
+    }
+
+    @Test
+    void any_NullExactlyWhenNoSetIsLeft_Indexed() {
+        Env env = env(4, 3);
+        assertTrue(env.setIndex.isAvailable());
+        removeSetMembers(new SetCounter(env));
+    }
+
+    @Test
+    void any_NullExactlyWhenNoSetIsLeft_NotIndexed() {
+        // 6561 cards have too many sets to index, so the sets are searched for
+        Env env = env(8, 3);
+        assertFalse(env.setIndex.isAvailable());
+        removeSetMembers(new SetCounter(env));
+    }
+
+    /**
+     * Cards 0, 1, 2 and cards 0, 3, 6 are the only sets among the cards 0, 1, 2, 3, 6 (in both configurations).
+     */
+    private void removeSetMembers(SetCounter counter) {
+        assertNull(counter.any());
+        for (int card : new int[]{0, 1, 2, 3, 6})
+            counter.add(card);
+        assertEquals(2, counter.count());
+        assertNotNull(counter.any());
+
+        // the set found first may be the one that is broken, the other one is still found
+        counter.remove(1);
+        assertEquals(1, counter.count());
+        assertNotNull(counter.any());
+
+        counter.remove(6);
+        assertEquals(0, counter.count());
+        assertNull(counter.any());
+
+        counter.add(6);
+        assertNotNull(counter.any());
+        counter.remove(0);
+        assertNull(counter.any());
+    }
+}
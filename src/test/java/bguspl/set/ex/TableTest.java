@@ -4,6 +4,7 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,12 +12,22 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -26,8 +37,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private Env env;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     @Mock
     Util util;
@@ -41,11 +53,11 @@ class TableTest {
     @BeforeEach
     void setUp() {
        
-        slotToCard = new Integer[12];
-        cardToSlot = new Integer[81];
+        slotToCard = Table.emptyArray(12);
+        cardToSlot = Table.emptyArray(81);
        // fillAllSlots();
         // purposely do not find the configuration files (use defaults here).
-        Env env = new Env(logger, new Config(logger, ""), ui, util);
+        env = new Env(logger, new Config(logger, ""), ui, util);
         table = new Table(env, slotToCard, cardToSlot);
     }
 
@@ -54,6 +66,8 @@ class TableTest {
         slotToCard[2] = 5;
         cardToSlot[3] = 1;
         cardToSlot[5] = 2;
+        // the table counts its cards when it is created
+        table = new Table(env, slotToCard, cardToSlot);
 
         return 2;
     }
@@ -63,19 +77,20 @@ class TableTest {
             slotToCard[i] = i;
             cardToSlot[i] = i;
         }
+        table = new Table(env, slotToCard, cardToSlot);
     }
 
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
         table.placeCard(5, 4);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
 
         verify(ui).placeCard(eq(8), eq(2));
 
-        assertEquals(5, (int) slotToCard[4]);
-        assertEquals(4, (int) cardToSlot[5]);
+        assertEquals(5, slotToCard[4]);
+        assertEquals(4, cardToSlot[5]);
 
         verify(ui).placeCard(eq(5), eq(4));
     }
@@ -83,8 +98,8 @@ class TableTest {
     private void placeAllCardsAndAssert() throws InterruptedException{
         for(int i=0; i<slotToCard.length; i++){
             table.placeCard(i, i);
-            assertEquals(i, (int) slotToCard[i]);
-            assertEquals(i, (int) cardToSlot[i]);
+            assertEquals(i, slotToCard[i]);
+            assertEquals(i, cardToSlot[i]);
 
             verify(ui).placeCard(eq(i), eq(i));
 
@@ -94,8 +109,8 @@ class TableTest {
     private void removeAllCardsAndAssert() throws InterruptedException{
         for(int i=0; i<slotToCard.length; i++){
             table.removeCard(i);
-            assertEquals(null, slotToCard[i]);
-            assertEquals(null, cardToSlot[i]);
+            assertEquals(Table.EMPTY, slotToCard[i]);
+            assertEquals(Table.EMPTY, cardToSlot[i]);
 
             verify(ui).removeCard(eq(i));
 
@@ -104,14 +119,14 @@ class TableTest {
 
     private void removeSomeCardsAndAssert() throws InterruptedException{
             table.removeCard(2);
-            assertEquals(null, slotToCard[2]);
-            assertEquals(null, cardToSlot[5]);
+            assertEquals(Table.EMPTY, slotToCard[2]);
+            assertEquals(Table.EMPTY, cardToSlot[5]);
 
             verify(ui).removeCard(eq(2));
 
             table.removeCard(1);
-            assertEquals(null, slotToCard[1]);
-            assertEquals(null, cardToSlot[3]);
+            assertEquals(Table.EMPTY, slotToCard[1]);
+            assertEquals(Table.EMPTY, cardToSlot[3]);
 
             verify(ui).removeCard(eq(1));
 
@@ -138,6 +153,23 @@ class TableTest {
         assertEquals(slotToCard.length, table.countCards());
     }
 
+    @Test
+    void countCards_UpdatedByPlaceAndRemove() {
+        fillSomeSlots();
+        assertEquals(0xfff & ~0b110, table.freeSlots());
+
+        table.placeCard(7, 0);
+        table.placeCard(8, 1); // replaces card 3
+        assertEquals(3, table.countCards());
+        assertEquals(0xfff & ~0b111, table.freeSlots());
+        assertEquals(Table.EMPTY, cardToSlot[3]);
+
+        table.removeCard(2);
+        table.removeCard(2); // already empty
+        assertEquals(2, table.countCards());
+        assertEquals(0xfff & ~0b011, table.freeSlots());
+    }
+
     @Test
     void placeSomeCard_SomeSlotsAreFilled() throws InterruptedException {
 
@@ -175,6 +207,27 @@ class TableTest {
         removeSomeCardsAndAssert();
     }
 
+    @Test
+    void placeAndRemoveCards_Batch() {
+        fillSomeSlots();
+
+        // the state changes at once, the ui after the table delay
+        table.placeCards(new int[]{7, 9}, new int[]{5, 0});
+        assertEquals(4, table.countCards());
+        assertEquals(7, slotToCard[5]);
+        assertEquals(0, cardToSlot[9]);
+        verify(ui, timeout(1000)).placeCard(eq(7), eq(5));
+        verify(ui, timeout(1000)).placeCard(eq(9), eq(0));
+
+        table.placeToken(0, 5);
+        assertArrayEquals(new int[]{7, 3, Table.EMPTY}, table.removeCards(new int[]{5, 1, 11}));
+        assertEquals(2, table.countCards());
+        assertEquals(Table.EMPTY, cardToSlot[7]);
+        assertEquals(0, table.tokens(0));
+        verify(ui, timeout(1000)).removeCard(eq(5));
+        verify(ui, timeout(1000)).removeCard(eq(1));
+    }
+
     @Test
     void placeToken() throws InterruptedException {
         fillAllSlots();
@@ -188,9 +241,101 @@ class TableTest {
     void removeToken() throws InterruptedException {
         fillAllSlots();
         for(int i=0; i<12; i++){
-            table.removeToken(1, i);
+            table.placeToken(1, i);
+            assertTrue(table.removeToken(1, i));
             verify(ui).removeToken(eq(1), eq(i));
+            assertFalse(table.removeToken(1, i));
+        }
+        assertEquals(0, table.tokens(1));
+    }
+
+    @Test
+    void toggleToken_LimitedToMaxTokens() {
+        fillAllSlots();
+        for(int i=0; i<4; i++)
+            table.toggleToken(0, i, 3);
+        assertEquals(0b111, table.tokens(0));
+
+        // toggling a slot with a token removes it
+        assertEquals(0b101, table.toggleToken(0, 1, 3));
+        assertEquals(0b1101, table.toggleToken(0, 3, 3));
+        assertArrayEquals(new int[]{0, 2, 3}, Table.slots(table.tokens(0)));
+    }
+
+    @Test
+    void removeTokens_AllPlayersOnSlot() {
+        fillAllSlots();
+        table.placeToken(0, 4);
+        table.placeToken(0, 5);
+        table.placeToken(1, 4);
+
+        table.removeTokens(4);
+        verify(ui).removeTokens(eq(4));
+        assertEquals(1L << 5, table.tokens(0));
+        assertEquals(0, table.tokens(1));
+
+        table.removeAllTokens();
+        verify(ui).removeTokens();
+        assertEquals(0, table.countTokens(0));
+    }
+
+    @Test
+    void removeCard_RemovesTokens() {
+        fillAllSlots();
+        table.placeToken(0, 3);
+        table.placeToken(1, 3);
+        table.placeToken(1, 4);
+
+        table.removeCard(3);
+        verify(ui).removeTokens(eq(3));
+        assertEquals(0, table.tokens(0));
+        assertEquals(1L << 4, table.tokens(1));
+
+        // no tokens on an empty slot
+        table.placeToken(0, 3);
+        assertFalse(table.hasToken(0, 3));
+    }
+
+    @Test
+    void countSets_UpdatedByPlaceAndRemove() {
+        Config config = new Config(logger, "");
+        env = new Env(logger, config, ui, new UtilImpl(config));
+        table = new Table(env, slotToCard, cardToSlot);
+
+        // 0000, 0001, 0002 is a set, 0010 completes none of them
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        table.placeCard(3, 2);
+        assertEquals(0, table.countSets());
+        assertNull(table.findSet());
+
+        table.placeCard(2, 3);
+        assertEquals(1, table.countSets());
+        assertArrayEquals(new int[]{0, 1, 2}, table.findSet());
+
+        table.removeCard(1);
+        assertEquals(0, table.countSets());
+        assertNull(table.findSet());
+    }
+
+    @Test
+    void findSet_RandomChoosesAmongAllSets() {
+        Config config = new Config(logger, "");
+        env = new Env(logger, config, ui, new UtilImpl(config));
+        for (int i = 0; i < slotToCard.length; ++i) {
+            slotToCard[i] = i;
+            cardToSlot[i] = i;
+        }
+        table = new Table(env, slotToCard, cardToSlot);
+        assertTrue(table.countSets() > 1);
+
+        Random random = new Random(42);
+        Set<List<Integer>> found = new HashSet<>();
+        for (int i = 0; i < 100; ++i) {
+            int[] set = table.findSet(random);
+            assertTrue(env.util.testSet(set));
+            found.add(Arrays.stream(set).sorted().boxed().collect(Collectors.toList()));
         }
+        assertEquals(table.countSets(), found.size());
     }
-   
 }